@@ -0,0 +1,84 @@
+package gameLogic;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Games for the benchmarks to work on. Snakes are steered by a simple rule, so the
+ * engine can be measured without bots: keep going straight unless that is deadly, and
+ * otherwise turn left or right. Snakes never grow unless asked to, so a game lasts
+ * until two snakes run into each other.
+ */
+final class BenchmarkGames
+{
+	static final GameObjectType SNAKE = new GameObjectType("Snake", true);
+	static final int NEVER = Integer.MAX_VALUE;
+	
+	private BenchmarkGames()
+	{
+	}
+	
+	/**
+	 * Creates a session that is ready to start.
+	 *
+	 * @param	size			The width and height of the board, not counting walls.
+	 * @param	snakeCount		The number of snakes.
+	 * @param	growthFrequency	The number of ticks between growths, or NEVER.
+	 * @param	withBrains		Whether the snakes get brains, or have to be given their moves.
+	 */
+	static Session newSession(int size, int snakeCount, int growthFrequency, boolean withBrains)
+	{
+		Metadata metadata = new Metadata(size + 2, size + 2, growthFrequency, 3, 1000, NEVER, 42L);
+		Session session = new Session(metadata);
+		for (int i = 0; i < snakeCount; ++i)
+		{
+			Brain brain = withBrains ? new SteeringBrain() : null;
+			session.addSnake(new Snake(SNAKE, "Snake " + i, brain, Color.getHSBColor((float)i / snakeCount, 0.8f, 0.8f)));
+		}
+		session.prepareForStart();
+		return session;
+	}
+	
+	/**
+	 * Creates a session and plays some ticks of it, for benchmarks that need a game in progress.
+	 */
+	static Session playedSession(int size, int snakeCount, int ticks)
+	{
+		Session session = newSession(size, snakeCount, 5, false);
+		List<Snake> snakes = new ArrayList<Snake>(session.getSnakes());
+		for (int i = 0; i < ticks && !session.hasEnded(); ++i)
+			session.tick(decideMoves(session.getBoard(), snakes));
+		return session;
+	}
+	
+	static Map<Snake, Direction> decideMoves(Board board, List<Snake> snakes)
+	{
+		Map<Snake, Direction> moves = new LinkedHashMap<Snake, Direction>();
+		for (Snake snake : snakes)
+			if (!snake.isDead())
+				moves.put(snake, steer(board, snake));
+		return moves;
+	}
+	
+	static Direction steer(Board board, Snake snake)
+	{
+		Direction forward = snake.getCurrentDirection();
+		Position head = snake.getHeadPosition();
+		if (!board.isLethal(board.getNeighbour(head, forward)))
+			return forward;
+		if (!board.isLethal(board.getNeighbour(head, forward.turnLeft())))
+			return forward.turnLeft();
+		return forward.turnRight();
+	}
+	
+	static class SteeringBrain implements Brain
+	{
+		public Direction getNextMove(Snake yourSnake, GameState gameState)
+		{
+			return steer(gameState.getBoard(), yourSnake);
+		}
+	}
+}
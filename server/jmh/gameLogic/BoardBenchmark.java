@@ -0,0 +1,48 @@
+package gameLogic;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures copying a board in the middle of a game, and the lethal object search that
+ * bots use to look around them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmark
+{
+	@Param({"15", "50", "200"})
+	public int size;
+	
+	@Param({"2", "5"})
+	public int range;
+	
+	private Board board;
+	private Position middle;
+	
+	@Setup
+	public void setUp()
+	{
+		Session session = BenchmarkGames.playedSession(size, 4, 100);
+		session.cleanup();
+		board = session.getBoard();
+		//~ The search doesn't stop at the edge of the board, so it is made from the middle.
+		middle = board.getPosition(board.getWidth() / 2, board.getHeight() / 2);
+	}
+	
+	@Benchmark
+	public Board copy()
+	{
+		return new Board(board);
+	}
+	
+	@Benchmark
+	public boolean hasLethalObjectWithinRange()
+	{
+		return board.hasLethalObjectWithinRange(middle, range);
+	}
+}
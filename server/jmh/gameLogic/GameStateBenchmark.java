@@ -0,0 +1,65 @@
+package gameLogic;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures what a brain pays for its view of the game: creating a GameState, which copies
+ * the board, asking it for the fruit and the walls, and the Frame copies a recording keeps.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameStateBenchmark
+{
+	@Param({"15", "50", "200"})
+	public int size;
+	
+	@Param({"2", "8"})
+	public int snakes;
+	
+	private Board board;
+	private Set<Snake> snakeSet;
+	private Metadata metadata;
+	private GameState state;
+	
+	@Setup
+	public void setUp()
+	{
+		Session session = BenchmarkGames.playedSession(size, snakes, 100);
+		session.cleanup();
+		board = session.getBoard();
+		snakeSet = session.getSnakes();
+		metadata = session.getMetadata();
+		state = session.getCurrentState();
+	}
+	
+	@Benchmark
+	public GameState createGameState()
+	{
+		return new GameState(board, snakeSet, metadata, ErrorState.NO_ERROR);
+	}
+	
+	@Benchmark
+	public List<Position> getFruits()
+	{
+		return state.getFruits();
+	}
+	
+	@Benchmark
+	public List<Position> getWalls()
+	{
+		return state.getWalls();
+	}
+	
+	@Benchmark
+	public Frame createFrame()
+	{
+		return new Frame(board, snakeSet);
+	}
+}
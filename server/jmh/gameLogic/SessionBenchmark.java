@@ -0,0 +1,89 @@
+package gameLogic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures Session.tick. tickWithoutBrains plays moves decided by the benchmark, which is
+ * the work of the engine alone, while tick also hands the turn to brains that answer at
+ * once, so it adds the cost of the snapshot and of waking the decision workers.
+ *
+ * A game is started over when it ends, and every RESTART_INTERVAL ticks so fruit doesn't
+ * pile up on the board.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SessionBenchmark
+{
+	private static final int RESTART_INTERVAL = 500;
+	
+	@Param({"15", "50", "200"})
+	public int size;
+	
+	@Param({"2", "8"})
+	public int snakes;
+	
+	private Session session;
+	private List<Snake> snakeList;
+	private int ticks;
+	
+	private Session brainSession;
+	private int brainTicks;
+	
+	@Setup(Level.Iteration)
+	public void setUp()
+	{
+		restart();
+		restartWithBrains();
+	}
+	
+	@TearDown(Level.Iteration)
+	public void tearDown()
+	{
+		session.cleanup();
+		brainSession.cleanup();
+	}
+	
+	@Benchmark
+	public Session tickWithoutBrains()
+	{
+		if (session.hasEnded() || ++ticks == RESTART_INTERVAL)
+		{
+			session.cleanup();
+			restart();
+		}
+		session.tick(BenchmarkGames.decideMoves(session.getBoard(), snakeList));
+		return session;
+	}
+	
+	@Benchmark
+	public Session tick()
+	{
+		if (brainSession.hasEnded() || ++brainTicks == RESTART_INTERVAL)
+		{
+			brainSession.cleanup();
+			restartWithBrains();
+		}
+		brainSession.tick();
+		return brainSession;
+	}
+	
+	private void restart()
+	{
+		session = BenchmarkGames.newSession(size, snakes, BenchmarkGames.NEVER, false);
+		snakeList = new ArrayList<Snake>(session.getSnakes());
+		ticks = 0;
+	}
+	
+	private void restartWithBrains()
+	{
+		brainSession = BenchmarkGames.newSession(size, snakes, BenchmarkGames.NEVER, true);
+		brainTicks = 0;
+	}
+}
@@ -0,0 +1,460 @@
+import gameLogic.Brain;
+import gameLogic.GameBatch;
+import gameLogic.GameObjectType;
+import gameLogic.GameResult;
+import gameLogic.Metadata;
+import gameLogic.Session;
+import gameLogic.Snake;
+import gameLogic.TickMetrics;
+import java.awt.Color;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Plays games between bots without a user interface, for running matches on machines
+ * without a display. The games are played back-to-back, as fast as the bots answer,
+ * and the results are written as CSV or JSON, one row or object per snake and game.
+ *
+ * Games can be played several at a time with --threads. The results are still written
+ * in the order of the games.
+ *
+ * With --timings, the time spent in each phase of the ticks is printed to standard
+ * error once all games are done, and --tick-timings writes it for every single tick.
+ *
+ * Nothing from the userInterface package is loaded, so no window or image is ever
+ * created. Bots are loaded the same way as in the settings window: from the classpath,
+ * or from the bot directory under the working directory.
+ *
+ * Usage: <code>java -cp snaykuu.jar:. HeadlessRunner [options] Bot1 Bot2 ...</code>
+ */
+class HeadlessRunner implements GameBatch.SessionFactory, GameBatch.Listener
+{
+	private static final String USAGE =
+		"Usage: HeadlessRunner [options] Bot1 Bot2 ...\n" +
+		"  --width N            Board width in squares, not counting walls (15)\n" +
+		"  --height N           Board height in squares, not counting walls (15)\n" +
+		"  --fruit-goal N       Fruits needed to win (5)\n" +
+		"  --fruit-frequency N  Ticks between fruits (10)\n" +
+		"  --growth N           Ticks per unit of snake growth (5)\n" +
+		"  --thinking-time N    Thinking time in ms per tick (100)\n" +
+		"  --games N            Number of games to play (1)\n" +
+		"  --seed N             Seed of the first game; game i uses seed + i (random)\n" +
+		"  --threads N          Number of games played at a time (1)\n" +
+		"  --format csv|json    Format of the results (csv)\n" +
+		"  --output FILE        Where to write the results (standard output)\n" +
+		"  --replays DIR        Save the replay of every game in a directory\n" +
+		"  --moves              Save the replays as just the seed and the moves\n" +
+		"  --timings            Print how long the phases of the ticks took\n" +
+		"  --tick-timings FILE  Write how long the phases of every tick took, as CSV";
+	
+	private int width = 15;
+	private int height = 15;
+	private int fruitGoal = 5;
+	private int fruitFrequency = 10;
+	private int growthFrequency = 5;
+	private int thinkingTime = 100;
+	private int numberOfGames = 1;
+	private int parallelism = 1;
+	private long seed = new Random().nextLong();
+	private boolean json = false;
+	private File outputFile = null;
+	private File replayDirectory = null;
+	private boolean saveMoves = false;
+	private boolean printTimings = false;
+	private File tickTimingsFile = null;
+	private List<String> botNames = new ArrayList<String>();
+	
+	private List<Class<?>> brainClasses = new ArrayList<Class<?>>();
+	private List<String> snakeNames = new ArrayList<String>();
+	private List<Color> snakeColors = new ArrayList<Color>();
+	
+	//~ Results of games that ended before some game before them, waiting to be written.
+	private PrintWriter out;
+	private String[] pendingResults;
+	private int nextResult = 0;
+	private int writtenResults = 0;
+	private int failedSaves = 0;
+	private PrintWriter tickTimings = null;
+	
+	public static void main(String[] args)
+	{
+		System.setProperty("java.awt.headless", "true");
+		
+		HeadlessRunner runner = new HeadlessRunner();
+		try
+		{
+			runner.parseArguments(args);
+		}
+		catch (IllegalArgumentException e)
+		{
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			System.exit(2);
+		}
+		
+		try
+		{
+			runner.loadBots();
+			runner.run();
+		}
+		catch (Exception e)
+		{
+			System.err.println("Error: " + e);
+			System.exit(1);
+		}
+	}
+	
+	private void parseArguments(String[] args)
+	{
+		for (int i = 0; i < args.length; ++i)
+		{
+			String arg = args[i];
+			if (!arg.startsWith("--"))
+			{
+				botNames.add(arg);
+				continue;
+			}
+			if (arg.equals("--moves"))
+			{
+				saveMoves = true;
+				continue;
+			}
+			if (arg.equals("--timings"))
+			{
+				printTimings = true;
+				continue;
+			}
+			if (i + 1 == args.length)
+				throw new IllegalArgumentException("Missing value for " + arg);
+			String value = args[++i];
+			
+			if (arg.equals("--width"))
+				width = parsePositive(arg, value);
+			else if (arg.equals("--height"))
+				height = parsePositive(arg, value);
+			else if (arg.equals("--fruit-goal"))
+				fruitGoal = parsePositive(arg, value);
+			else if (arg.equals("--fruit-frequency"))
+				fruitFrequency = parsePositive(arg, value);
+			else if (arg.equals("--growth"))
+				growthFrequency = parsePositive(arg, value);
+			else if (arg.equals("--thinking-time"))
+				thinkingTime = parsePositive(arg, value);
+			else if (arg.equals("--games"))
+				numberOfGames = parsePositive(arg, value);
+			else if (arg.equals("--threads"))
+				parallelism = parsePositive(arg, value);
+			else if (arg.equals("--seed"))
+				seed = parseSeed(value);
+			else if (arg.equals("--format"))
+			{
+				if (!value.equals("csv") && !value.equals("json"))
+					throw new IllegalArgumentException("Unknown format " + value);
+				json = value.equals("json");
+			}
+			else if (arg.equals("--output"))
+				outputFile = new File(value);
+			else if (arg.equals("--replays"))
+				replayDirectory = new File(value);
+			else if (arg.equals("--tick-timings"))
+				tickTimingsFile = new File(value);
+			else
+				throw new IllegalArgumentException("Unknown option " + arg);
+		}
+		
+		if (botNames.isEmpty())
+			throw new IllegalArgumentException("No bots given");
+		if (saveMoves && replayDirectory == null)
+			throw new IllegalArgumentException("--moves needs --replays");
+	}
+	
+	private static int parsePositive(String option, String value)
+	{
+		try
+		{
+			int number = Integer.parseInt(value);
+			if (number > 0)
+				return number;
+		}
+		catch (NumberFormatException e)
+		{
+		}
+		throw new IllegalArgumentException(option + " needs a positive number, not " + value);
+	}
+	
+	private static long parseSeed(String value)
+	{
+		try
+		{
+			return Long.parseLong(value);
+		}
+		catch (NumberFormatException e)
+		{
+			throw new IllegalArgumentException("--seed needs a number, not " + value);
+		}
+	}
+	
+	/**
+	 * Finds the brain class of every bot, and gives the snakes their names and colors.
+	 * The colors are picked like the settings window does, and a bot that plays more
+	 * than once gets a number after its name.
+	 */
+	private void loadBots() throws Exception
+	{
+		ClassLoader loader = new URLClassLoader(new URL[] { new File(".").toURI().toURL() }, HeadlessRunner.class.getClassLoader());
+		Random r = new Random(4L);
+		float stepSize = 0.8f/botNames.size();
+		
+		for (int i = 0; i < botNames.size(); ++i)
+		{
+			String botName = botNames.get(i);
+			Class<?> brainClass;
+			try
+			{
+				brainClass = Class.forName("bot." + botName, true, loader);
+			}
+			catch (ClassNotFoundException e)
+			{
+				throw new IllegalArgumentException("Couldn't find class " + botName);
+			}
+			if (!Brain.class.isAssignableFrom(brainClass))
+				throw new IllegalArgumentException(botName + " is not a Brain");
+			
+			int copies = 0;
+			for (int j = 0; j <= i; ++j)
+				if (botNames.get(j).equals(botName))
+					++copies;
+			
+			brainClasses.add(brainClass);
+			snakeNames.add(copies == 1 ? botName : botName + " " + copies);
+			snakeColors.add(Color.getHSBColor(stepSize*i, r.nextFloat()/2+0.5f, r.nextFloat()/2+0.5f));
+		}
+	}
+	
+	private void run() throws Exception
+	{
+		if (replayDirectory != null && !replayDirectory.isDirectory() && !replayDirectory.mkdirs())
+			throw new IOException("Could not create " + replayDirectory);
+		
+		//~ Bots and the engine print to System.out, which mustn't end up among the results.
+		if (outputFile == null)
+		{
+			out = new PrintWriter(new OutputStreamWriter(System.out, "UTF-8"));
+			System.setOut(System.err);
+		}
+		else
+			out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(outputFile), "UTF-8"));
+		
+		if (tickTimingsFile != null)
+		{
+			tickTimings = new PrintWriter(new OutputStreamWriter(new FileOutputStream(tickTimingsFile), "UTF-8"));
+			tickTimings.print("game,turn");
+			for (TickMetrics.Phase phase : TickMetrics.Phase.values())
+				tickTimings.print("," + phase.name().toLowerCase() + "_ns");
+			tickTimings.println();
+		}
+		
+		GameBatch batch = new GameBatch(this, numberOfGames, parallelism);
+		batch.setListener(this);
+		pendingResults = new String[numberOfGames];
+		try
+		{
+			if (json)
+				out.println("[");
+			else
+				out.println("game,seed,turns,snake,placement,score,lifespan,dead");
+			
+			batch.run();
+			
+			if (json)
+				out.println("\n]");
+		}
+		finally
+		{
+			out.close();
+			if (tickTimings != null)
+				tickTimings.close();
+		}
+		
+		if (printTimings)
+			printTimings(batch.getTickMetrics());
+		
+		if (out.checkError())
+			throw new IOException("Could not write the results");
+		if (tickTimings != null && tickTimings.checkError())
+			throw new IOException("Could not write the tick timings");
+		if (batch.getFailedGames() > 0)
+			throw new Exception(batch.getFailedGames() + " of " + numberOfGames + " games failed");
+		if (failedSaves > 0)
+			throw new IOException(failedSaves + " replays could not be saved");
+	}
+	
+	public Session createSession(int game) throws Exception
+	{
+		Metadata metadata = new Metadata(width + 2, height + 2, growthFrequency, fruitFrequency, thinkingTime, fruitGoal, seed + game);
+		Session session = new Session(metadata);
+		
+		GameObjectType objectType = new GameObjectType("Snake", true);
+		for (int i = 0; i < brainClasses.size(); ++i)
+		{
+			Brain brain = (Brain)brainClasses.get(i).getDeclaredConstructor().newInstance();
+			session.addSnake(new Snake(objectType, snakeNames.get(i), brain, snakeColors.get(i)));
+		}
+		
+		session.prepareForStart();
+		if (tickTimings != null)
+			session.getTickMetrics().setListener(new TickTimingWriter(game));
+		if (replayDirectory != null && !saveMoves)
+			session.streamReplayTo(new File(replayDirectory, "game" + game + ".srp"));
+		
+		return session;
+	}
+	
+	private static void printTimings(TickMetrics metrics)
+	{
+		System.err.println("Tick phases over " + metrics.getTickCount() + " ticks:");
+		for (TickMetrics.Phase phase : TickMetrics.Phase.values())
+			System.err.println(String.format("  %-13s mean %8.1f us, max %8.1f us, total %8.1f ms", phase.name().toLowerCase(),
+				metrics.getMean(phase) / 1000.0, metrics.getMaximum(phase) / 1000.0, metrics.getTotal(phase) / 1000000.0));
+	}
+	
+	/**
+	 * Writes the phase times of every tick of a game as a row of the tick timings.
+	 * Each row is built before taking the lock, so games played at the
+	 * same time only wait on each other for the write itself.
+	 */
+	private class TickTimingWriter implements TickMetrics.Listener
+	{
+		private final int game;
+		
+		TickTimingWriter(int game)
+		{
+			this.game = game;
+		}
+		
+		public void tickFinished(int turn, TickMetrics metrics)
+		{
+			StringBuilder row = new StringBuilder();
+			row.append(game).append(',').append(turn);
+			for (TickMetrics.Phase phase : TickMetrics.Phase.values())
+				row.append(',').append(metrics.getLastTick(phase));
+			synchronized (tickTimings)
+			{
+				tickTimings.println(row);
+			}
+		}
+	}
+	
+	public void gameFinished(int game, Session session)
+	{
+		if (saveMoves)
+		{
+			try
+			{
+				session.getGameResult().getRecordedGame().saveMovesToFile(new File(replayDirectory, "game" + game + ".srp"));
+			}
+			catch (IOException e)
+			{
+				System.err.println("Error saving game " + game + ": " + e);
+				synchronized (this)
+				{
+					++failedSaves;
+				}
+			}
+		}
+		addResult(game, formatResult(game, seed + game, session));
+	}
+	
+	public void gameFailed(int game, Exception e)
+	{
+		System.err.println("Error in game " + game + ": " + e);
+		addResult(game, "");
+	}
+	
+	/**
+	 * Writes the result of a game once the results of all games before it are written.
+	 * A failed game has an empty result, and leaves no trace in the output.
+	 */
+	private synchronized void addResult(int game, String result)
+	{
+		pendingResults[game] = result;
+		while (nextResult < numberOfGames && pendingResults[nextResult] != null)
+		{
+			String next = pendingResults[nextResult];
+			pendingResults[nextResult++] = null;
+			if (next.isEmpty())
+				continue;
+			
+			if (json && writtenResults > 0)
+				out.print(",\n");
+			out.print(next);
+			++writtenResults;
+		}
+		out.flush();
+	}
+	
+	private String formatResult(int game, long gameSeed, Session session)
+	{
+		GameResult result = session.getGameResult();
+		int turns = result.getRecordedGame().getTurnCount();
+		List<List<Snake>> winners = result.getWinners();
+		StringBuilder builder = new StringBuilder();
+		
+		if (json)
+		{
+			builder.append("  {\"game\": " + game + ", \"seed\": " + gameSeed + ", \"turns\": " + turns + ", \"snakes\": [");
+			String separator = "\n";
+			for (int place = 0; place < winners.size(); ++place)
+			{
+				for (Snake snake : winners.get(place))
+				{
+					builder.append(separator + "    {\"name\": " + jsonString(snake.getName()) + ", \"placement\": " + (place+1)
+						+ ", \"score\": " + snake.getScore() + ", \"lifespan\": " + snake.getLifespan() + ", \"dead\": " + snake.isDead() + "}");
+					separator = ",\n";
+				}
+			}
+			builder.append("\n  ]}");
+		}
+		else
+		{
+			for (int place = 0; place < winners.size(); ++place)
+			{
+				for (Snake snake : winners.get(place))
+					builder.append(game + "," + gameSeed + "," + turns + "," + csvString(snake.getName()) + "," + (place+1)
+						+ "," + snake.getScore() + "," + snake.getLifespan() + "," + snake.isDead() + "\n");
+			}
+		}
+		return builder.toString();
+	}
+	
+	private static String csvString(String s)
+	{
+		if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0)
+			return s;
+		return "\"" + s.replace("\"", "\"\"") + "\"";
+	}
+	
+	private static String jsonString(String s)
+	{
+		StringBuilder builder = new StringBuilder("\"");
+		for (int i = 0; i < s.length(); ++i)
+		{
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\')
+				builder.append('\\').append(c);
+			else if (c < 0x20)
+				builder.append(String.format("\\u%04x", (int)c));
+			else
+				builder.append(c);
+		}
+		return builder.append('"').toString();
+	}
+}
@@ -1,4 +1,5 @@
 import gameLogic.Session;
+import gameLogic.SimulationThread;
 import gameLogic.GameResult;
 import userInterface.SettingsWindow;
 import userInterface.MainWindow;
@@ -73,18 +74,26 @@ class Main
 	
 	private static GameEndType runGame(Session session, int gameSpeed, int pixelsPerUnit)
 	{
-		MainWindow mainWindow = new MainWindow(session, pixelsPerUnit);
 		session.tick();
-		mainWindow.repaint();
+		SimulationThread simulation = new SimulationThread(session, gameSpeed);
+		MainWindow mainWindow = new MainWindow(simulation, pixelsPerUnit);
 		sleep(1000);
 		
-		while (!session.hasEnded())
+		//~ The game is played on the simulation thread, and the window picks up a copy
+		//~ of the latest tick whenever it draws, so drawing never sees a tick half done.
+		simulation.start();
+		while (simulation.isAlive())
 		{
-			session.tick();
-			mainWindow.update();
-			
-			sleep(gameSpeed);
+			try
+			{
+				simulation.join();
+			}
+			catch (InterruptedException e)
+			{
+			}
 		}
+		if (simulation.getFailure() != null)
+			throw simulation.getFailure();
 		
 		session.cleanup();
 		
@@ -1,12 +1,20 @@
 package gameLogic;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 import java.util.HashSet;
 
 /**
- * This class represents the entire game board through a 2D-array of Square objects.
- * Each Square, in turn, contains GameObjects, such as fruits, walls, or other snakes.
+ * This class represents the entire game board. The contents of the board are stored
+ * as packed bit planes, one for walls, one for fruit and one for snakes, together with
+ * a plane holding the id of the snake occupying each square. Square objects are thin
+ * views on top of these planes.
  * 
  * @author 	Sixten Hilborn
  * @author	Arian Jafari
@@ -15,16 +23,56 @@ import java.util.HashSet;
 
 public class Board implements Serializable
 {
-	private Square[][] board;
+	private int width, height;
+	
+	private long[] walls;
+	private long[] fruits;
+	private long[] snakeCells;
+	
+	//~ Id + 1 of the first snake in each square, 0 for squares without snakes.
+	private short[] snakeIds;
+	//~ Number of snake segments in each square; more than one means a collision.
+	private short[] snakeCounts;
+	//~ Serial of the first snake's segment in each square, see Snake.getSegmentSerial().
+	private int[] segmentSerials;
+	private Snake[] snakeTable = new Snake[0];
+	
+	//~ Any further snakes sharing a square, which only happens on collisions.
+	private HashMap<Integer, ArrayList<Snake>> stackedSnakes = new HashMap<Integer, ArrayList<Snake>>();
+	
+	private GameObjectType wallType, fruitType;
+	
+	private transient Square[] squares;
+	private transient PositionTable positions = null;
+	
+	//~ Index of the empty squares, built the first time it's needed. freeCells holds the
+	//~ empty squares in no particular order and freeSlots tells where in freeCells each
+	//~ square is (-1 for occupied squares), so both updates and random picks are O(1).
+	private transient int[] freeCells = null;
+	private transient int[] freeSlots = null;
+	private transient int freeCount = 0;
+	
+	//~ Indexes of the walls and fruit, built the first time they're asked for and then
+	//~ kept up to date along with the bit planes.
+	private transient CellIndex wallIndex = null;
+	private transient CellIndex fruitIndex = null;
 	
 	Board(int width, int height)
 	{
 		if (width < 1 || height < 1)
 			throw new IllegalArgumentException("Board size must be greater than 0");
-		board = new Square[width][height];
-		for (int x = 0; x < width; ++x)
-			for (int y = 0; y < height; ++y)
-				board[x][y] = new Square();
+		this.width = width;
+		this.height = height;
+		
+		int cells = width * height;
+		int words = (cells + 63) >>> 6;
+		walls = new long[words];
+		fruits = new long[words];
+		snakeCells = new long[words];
+		snakeIds = new short[cells];
+		snakeCounts = new short[cells];
+		segmentSerials = new int[cells];
+		positions = PositionTable.forSize(width, height);
 	}
 	
 	/**
@@ -32,30 +80,40 @@ public class Board implements Serializable
 	 */
 	Board(Board other)
 	{
-		this.board = new Square[other.getWidth()][other.getHeight()];
-		for (int x = 0; x < getWidth(); ++x)
-			for (int y = 0; y < getHeight(); ++y)
-				board[x][y] = new Square(other.board[x][y]);
+		this.width = other.width;
+		this.height = other.height;
+		this.walls = other.walls.clone();
+		this.fruits = other.fruits.clone();
+		this.snakeCells = other.snakeCells.clone();
+		this.snakeIds = other.snakeIds.clone();
+		this.snakeCounts = other.snakeCounts.clone();
+		this.segmentSerials = other.segmentSerials.clone();
+		this.snakeTable = other.snakeTable.clone();
+		for (Map.Entry<Integer, ArrayList<Snake>> stack : other.stackedSnakes.entrySet())
+			stackedSnakes.put(stack.getKey(), new ArrayList<Snake>(stack.getValue()));
+		this.wallType = other.wallType;
+		this.fruitType = other.fruitType;
+		this.positions = other.positions;
 	}
 	
 	/**
-	 * Gets the width of the board (the 2D-array).
+	 * Gets the width of the board.
 	 * 
 	 * @return	The width of the board.
 	 */
 	public int getWidth()
 	{
-		return board.length;
+		return width;
 	}
 	
 	/**
-	 * Gets the height of the board (the 2D-array).
+	 * Gets the height of the board.
 	 * 
 	 * @return	The height of the board.
 	 */
 	public int getHeight()
 	{
-		return board[0].length;
+		return height;
 	}
 	
 	/**
@@ -67,7 +125,7 @@ public class Board implements Serializable
 	 */
 	public boolean hasGameObject(Position p)
 	{
-		return (!getSquare(p).isEmpty());
+		return hasGameObject(cellOf(p));
 	}
 	
 	/**
@@ -78,7 +136,7 @@ public class Board implements Serializable
 	 */
 	public boolean hasFruit(Position p)
 	{
-		return (getSquare(p).hasFruit());
+		return hasFruit(cellOf(p));
 	}
 	
 	/**
@@ -89,7 +147,7 @@ public class Board implements Serializable
 	 */
 	public boolean hasWall(Position p)
 	{
-		return (getSquare(p).hasWall());
+		return hasWall(cellOf(p));
 	}
 	
 	/**
@@ -101,7 +159,52 @@ public class Board implements Serializable
 	 */
 	public boolean hasSnake(Position p)
 	{
-		return (getSquare(p).hasSnake());
+		return hasSnake(cellOf(p));
+	}
+	
+	/**
+	 * Gets the snake in a square, the first one to get there if several snakes have
+	 * collided in it.
+	 * 
+	 * @param	p	The position of the square.
+	 * @return	The snake, or null if there is no snake in the square.
+	 */
+	public Snake getSnake(Position p)
+	{
+		int cell = cellOf(p);
+		return isSet(snakeCells, cell) ? getTopSnake(cell) : null;
+	}
+	
+	/**
+	 * Gets which segment of {@link #getSnake(Position)} is in a square, counted from its
+	 * head. The board keeps track of it, so there is no need to go through the snake.
+	 * 
+	 * @param	p	The position of the square.
+	 * @return	The index of the segment, or -1 if there is no snake in the square.
+	 */
+	public int getSegmentIndex(Position p)
+	{
+		int cell = cellOf(p);
+		if (!isSet(snakeCells, cell))
+			return -1;
+		
+		Snake snake = getTopSnake(cell);
+		int index = snake.getSegmentIndex(segmentSerials[cell]);
+		if (index >= 0 && snake.getSegmentX(index) == p.getX() && snake.getSegmentY(index) == p.getY())
+			return index;
+		return snake.findSegment(p.getX(), p.getY());
+	}
+	
+	/**
+	 * Gets the number of snake segments in a square, which is more than one only where
+	 * snakes have collided.
+	 * 
+	 * @param	p	The position of the square.
+	 * @return	The number of segments.
+	 */
+	public int getSnakeCount(Position p)
+	{
+		return snakeCounts[cellOf(p)];
 	}
 	
 	/**
@@ -113,11 +216,12 @@ public class Board implements Serializable
 	 */
 	public boolean isLethal(Position p)
 	{
-		return (getSquare(p).isLethal());
+		return isLethal(cellOf(p));
 	}
 	
 	/**
-	 * Gets a Square at 
+	 * Gets a Square at the given position. The Square is a view of the board, so it
+	 * always reflects the current contents of that position.
 	 * 
 	 * @param	p	The position in the board where we want to get the Square from.
 	 * @return	The Square at the specified position.
@@ -125,7 +229,164 @@ public class Board implements Serializable
 	 */
 	public Square getSquare(Position p)
 	{
-		return board[p.getX()][p.getY()];
+		int cell = cellOf(p);
+		if (squares == null)
+			squares = new Square[width * height];
+		Square square = squares[cell];
+		if (square == null)
+		{
+			square = new Square(this, cell);
+			squares[cell] = square;
+		}
+		return square;
+	}
+	
+	/**
+	 * Gets the Position of a square on this board. The same Position object is returned
+	 * every time, and boards of the same size share them, so this never allocates.
+	 * 
+	 * @param	x	The x coordinate.
+	 * @param	y	The y coordinate.
+	 * @return	The canonical Position for (x, y).
+	 * @throws	ArrayIndexOutOfBoundsException if (x, y) is outside the board.
+	 */
+	public Position getPosition(int x, int y)
+	{
+		return positionTable().get(x, y);
+	}
+	
+	/**
+	 * Gets the square next to a position in a given direction.
+	 * 
+	 * @param	p	The position to start from.
+	 * @param	dir	The direction to look in.
+	 * @return	The canonical Position of the neighbour, or null if it is outside the board.
+	 */
+	public Position getNeighbour(Position p, Direction dir)
+	{
+		return positionTable().getNeighbour(cellOf(p), dir);
+	}
+	
+	/**
+	 * Gets all neighbours of a position that are on the board. Unlike Position.getNeighbours,
+	 * the list is shared and unmodifiable, so it is free to ask for.
+	 * 
+	 * @param	p	The position whose neighbours we want.
+	 * @return	An unmodifiable list of two to four neighbour positions.
+	 */
+	public List<Position> getNeighbours(Position p)
+	{
+		return positionTable().getNeighbours(cellOf(p));
+	}
+	
+	/**
+	 * Gets the positions of all fruit on the board, ordered by x and then by y. The list
+	 * is kept up to date as fruit comes and goes, so asking for it again costs nothing
+	 * until the fruit changes.
+	 * 
+	 * @return	An unmodifiable list of the positions holding fruit.
+	 */
+	public synchronized List<Position> getFruitPositions()
+	{
+		if (fruitIndex == null)
+			fruitIndex = new CellIndex(fruits, width, height);
+		return fruitIndex.getPositions(positionTable());
+	}
+	
+	/**
+	 * Gets the positions of all walls on the board, ordered by x and then by y. The list
+	 * is kept up to date as walls come and go, so asking for it again costs nothing
+	 * until the walls change.
+	 * 
+	 * @return	An unmodifiable list of the positions holding walls.
+	 */
+	public synchronized List<Position> getWallPositions()
+	{
+		if (wallIndex == null)
+			wallIndex = new CellIndex(walls, width, height);
+		return wallIndex.getPositions(positionTable());
+	}
+	
+	/**
+	 * Returns whether or not every square on the board contains some game object.
+	 * 
+	 * @return	True if there are no empty squares left, false if not.
+	 */
+	boolean isFull()
+	{
+		return getFreeSquareCount() == 0;
+	}
+	
+	/**
+	 * Gets the number of squares on the board that contain no game objects.
+	 * 
+	 * @return	The number of empty squares.
+	 */
+	int getFreeSquareCount()
+	{
+		buildFreeCellIndex();
+		return freeCount;
+	}
+	
+	/**
+	 * Picks one of the empty squares on the board, with every empty square being
+	 * equally likely.
+	 * 
+	 * @param	random	The source of randomness to pick with.
+	 * @return	The position of the picked square, or null if the board is full.
+	 */
+	Position getRandomFreePosition(Random random)
+	{
+		buildFreeCellIndex();
+		if (freeCount == 0)
+			return null;
+		return positionTable().get(freeCells[random.nextInt(freeCount)]);
+	}
+	
+	PositionTable positionTable()
+	{
+		if (positions == null)
+			positions = PositionTable.forSize(width, height);
+		return positions;
+	}
+	
+	//~ The index is built and updated without locking, so it is only for the board of the
+	//~ session itself, never for the copies handed to the brains.
+	private void buildFreeCellIndex()
+	{
+		if (freeCells != null)
+			return;
+		
+		freeCells = new int[width * height];
+		freeSlots = new int[width * height];
+		freeCount = 0;
+		for (int cell = 0; cell < freeSlots.length; ++cell)
+		{
+			freeSlots[cell] = -1;
+			updateFreeCell(cell);
+		}
+	}
+	
+	private void updateFreeCell(int cell)
+	{
+		if (freeCells == null)
+			return;
+		
+		boolean empty = !hasGameObject(cell);
+		int slot = freeSlots[cell];
+		if (empty && slot < 0)
+		{
+			freeCells[freeCount] = cell;
+			freeSlots[cell] = freeCount++;
+		}
+		else if (!empty && slot >= 0)
+		{
+			//~ Move the last free square into the hole left by this one.
+			int last = freeCells[--freeCount];
+			freeCells[slot] = last;
+			freeSlots[last] = slot;
+			freeSlots[cell] = -1;
+		}
 	}
 	
 	/**
@@ -149,10 +410,10 @@ public class Board implements Serializable
 	{
 		if (range-- < 0)
 			return;
-			
+		
 		visited.add(from);
 		
-		for (Position neighbour : from.getNeighbours())
+		for (Position neighbour : from.getNeighbours(positionTable()))
 		{
 			if (!visited.contains(neighbour))
 				depthFirstSearch(neighbour, visited, range);
@@ -163,36 +424,376 @@ public class Board implements Serializable
 	{
 		for (Position pos : positions)
 		{
-			int x = pos.getX();
-			int y = pos.getY();
-			if (board[x][y].hasSnake() || board[x][y].hasWall())
+			int cell = cellOf(pos);
+			if (hasSnake(cell) || hasWall(cell))
 				return true;
 		}
 		return false;
 	}
 	
+	/**
+	 * Converts a position to the index of its square in the bit planes.
+	 */
+	int cellOf(Position p)
+	{
+		return cellOf(p.getX(), p.getY());
+	}
+	
+	int cellOf(int x, int y)
+	{
+		if (x < 0 || x >= width || y < 0 || y >= height)
+			throw new ArrayIndexOutOfBoundsException("Position {x: " + x + " y: " + y + "} is outside the board");
+		return y * width + x;
+	}
+	
+	boolean hasGameObject(int cell)
+	{
+		return isSet(walls, cell) || isSet(fruits, cell) || isSet(snakeCells, cell);
+	}
+	
+	boolean hasFruit(int cell)
+	{
+		return isSet(fruits, cell);
+	}
+	
+	boolean hasWall(int cell)
+	{
+		return isSet(walls, cell);
+	}
+	
+	boolean hasSnake(int cell)
+	{
+		return isSet(snakeCells, cell);
+	}
+	
+	int getSnakeCount(int cell)
+	{
+		return snakeCounts[cell];
+	}
+	
+	boolean isLethal(int cell)
+	{
+		if (isSet(walls, cell) && wallType.isLethal())
+			return true;
+		if (isSet(fruits, cell) && fruitType.isLethal())
+			return true;
+		return isSet(snakeCells, cell) && getTopSnake(cell).getType().isLethal();
+	}
+	
+	boolean hasObjectType(int cell, String typeName)
+	{
+		if (isSet(walls, cell) && wallType.getName().equals(typeName))
+			return true;
+		if (isSet(fruits, cell) && fruitType.getName().equals(typeName))
+			return true;
+		if (!isSet(snakeCells, cell))
+			return false;
+		if (getTopSnake(cell).getType().getName().equals(typeName))
+			return true;
+		ArrayList<Snake> stack = stackedSnakes.get(cell);
+		if (stack != null)
+			for (Snake snake : stack)
+				if (snake.getType().getName().equals(typeName))
+					return true;
+		return false;
+	}
+	
+	ArrayList<Snake> getSnakes(int cell)
+	{
+		ArrayList<Snake> snakes = new ArrayList<Snake>();
+		if (!isSet(snakeCells, cell))
+			return snakes;
+		snakes.add(getTopSnake(cell));
+		ArrayList<Snake> stack = stackedSnakes.get(cell);
+		if (stack != null)
+			snakes.addAll(stack);
+		return snakes;
+	}
+	
+	private Snake getTopSnake(int cell)
+	{
+		return snakeTable[snakeIds[cell] - 1];
+	}
+	
+	GameObjectType getWallType()
+	{
+		return wallType;
+	}
+	
+	GameObjectType getFruitType()
+	{
+		return fruitType;
+	}
+	
 	void addGameObject(GameObjectType obj, Position p)
 	{
-		board[p.getX()][p.getY()].addGameObject(new GameObject(obj));
+		addGameObject(new GameObject(obj), p);
 	}
 	
 	void addGameObject(GameObject obj, Position p)
 	{
-		board[p.getX()][p.getY()].addGameObject(obj);
+		addGameObject(obj, cellOf(p));
+	}
+	
+	void addGameObject(GameObject obj, int cell)
+	{
+		if (obj instanceof Snake)
+		{
+			Snake snake = (Snake)obj;
+			addSnake(snake, cell, snake.getSegmentSerial(snake.findSegment(cell % width, cell / width)));
+		}
+		else
+		{
+			GameObjectType type = obj.getType();
+			if (isWallType(type))
+			{
+				wallType = type;
+				setWall(cell);
+			}
+			else if (isFruitType(type))
+			{
+				fruitType = type;
+				setFruit(cell);
+			}
+			else
+				throw new IllegalArgumentException("The board cannot hold objects of type " + type.getName());
+		}
+		updateFreeCell(cell);
 	}
 	
 	void clearSquare(Position p)
 	{
-		board[p.getX()][p.getY()].clear();
+		clearSquare(cellOf(p));
+	}
+	
+	void clearSquare(int cell)
+	{
+		clearWall(cell);
+		clearFruit(cell);
+		clear(snakeCells, cell);
+		snakeIds[cell] = 0;
+		snakeCounts[cell] = 0;
+		stackedSnakes.remove(cell);
+		updateFreeCell(cell);
 	}
 	
 	void removeGameObject(GameObject obj, Position p)
 	{
-		board[p.getX()][p.getY()].removeGameObject(obj);
+		removeGameObject(obj, cellOf(p));
+	}
+	
+	void removeGameObject(GameObject obj, int cell)
+	{
+		if (obj instanceof Snake)
+		{
+			removeSnake((Snake)obj, cell);
+		}
+		else
+		{
+			GameObjectType type = obj.getType();
+			if (isWallType(type))
+				clearWall(cell);
+			else if (isFruitType(type))
+				clearFruit(cell);
+		}
+		updateFreeCell(cell);
 	}
 	
 	void removeFruit(Position p)
 	{
-		board[p.getX()][p.getY()].removeFruit();
+		removeFruit(cellOf(p));
+	}
+	
+	void removeFruit(int cell)
+	{
+		clearFruit(cell);
+		updateFreeCell(cell);
+	}
+	
+	// Remove a fruit from the square, returning its value.
+	int eatFruit(int cell)
+	{
+		if (!isSet(fruits, cell))
+			return 0;
+		clearFruit(cell);
+		updateFreeCell(cell);
+		return fruitType.getValue();
+	}
+	
+	/**
+	 * Puts a snake on a square when it is already known which of its segments is there,
+	 * which saves going through the snake to find it.
+	 * 
+	 * @param	index	The index of the segment in the square, counted from the head.
+	 */
+	void addSnakeSegment(Snake snake, int cell, int index)
+	{
+		addSnake(snake, cell, snake.getSegmentSerial(index));
+		updateFreeCell(cell);
+	}
+	
+	/**
+	 * Moves the head of a snake one step and puts the new head on the board.
+	 * 
+	 * @return	The square the head moved into.
+	 */
+	int moveSnakeHead(Snake snake, Direction dir)
+	{
+		int headCell = cellOf(snake.moveHead(dir));
+		addSnake(snake, headCell, snake.getSegmentSerial(0));
+		updateFreeCell(headCell);
+		return headCell;
+	}
+	
+	/**
+	 * Removes the last segment of a snake, both from the snake and from the board.
+	 */
+	void removeSnakeTail(Snake snake)
+	{
+		int tail = snake.getLength() - 1;
+		int tailCell = cellOf(snake.getSegmentX(tail), snake.getSegmentY(tail));
+		snake.removeTail();
+		removeSnake(snake, tailCell);
+		updateFreeCell(tailCell);
+	}
+	
+	/**
+	 * Makes the board refer to other snake objects, for example copies of the snakes
+	 * on it. Snakes are matched by id.
+	 */
+	void replaceSnakes(Snake[] snakesById)
+	{
+		for (int id = 0; id < snakeTable.length; ++id)
+			if (snakeTable[id] != null)
+				snakeTable[id] = snakesById[id];
+		
+		for (ArrayList<Snake> stack : stackedSnakes.values())
+			for (int i = 0; i < stack.size(); ++i)
+				stack.set(i, snakesById[stack.get(i).getId()]);
+	}
+	
+	private void addSnake(Snake snake, int cell, int serial)
+	{
+		int id = snake.getId();
+		if (id < 0)
+			throw new IllegalArgumentException("Snake " + snake + " has no id, add it to a session first");
+		if (id >= snakeTable.length)
+			snakeTable = Arrays.copyOf(snakeTable, Math.max(id + 1, snakeTable.length * 2));
+		snakeTable[id] = snake;
+		snake.setPositionTable(positionTable());
+		++snakeCounts[cell];
+		
+		if (!isSet(snakeCells, cell))
+		{
+			set(snakeCells, cell);
+			snakeIds[cell] = (short)(id + 1);
+			segmentSerials[cell] = serial;
+			return;
+		}
+		
+		ArrayList<Snake> stack = stackedSnakes.get(cell);
+		if (stack == null)
+		{
+			stack = new ArrayList<Snake>(2);
+			stackedSnakes.put(cell, stack);
+		}
+		stack.add(snake);
+	}
+	
+	private void removeSnake(Snake snake, int cell)
+	{
+		if (!isSet(snakeCells, cell))
+			return;
+		
+		ArrayList<Snake> stack = stackedSnakes.get(cell);
+		if (stack != null && stack.remove(snake))
+		{
+			--snakeCounts[cell];
+			if (stack.isEmpty())
+				stackedSnakes.remove(cell);
+			//~ A snake that ran into itself may have left the segment on top.
+			if (getTopSnake(cell) == snake)
+				segmentSerials[cell] = snake.getSegmentSerial(snake.findSegment(cell % width, cell / width));
+			return;
+		}
+		
+		if (getTopSnake(cell) != snake)
+			return;
+		
+		--snakeCounts[cell];
+		if (stack == null)
+		{
+			clear(snakeCells, cell);
+			snakeIds[cell] = 0;
+			return;
+		}
+		
+		//~ Promote the next snake in the stack to the top of the square.
+		Snake next = stack.remove(0);
+		snakeIds[cell] = (short)(next.getId() + 1);
+		segmentSerials[cell] = next.getSegmentSerial(next.findSegment(cell % width, cell / width));
+		if (stack.isEmpty())
+			stackedSnakes.remove(cell);
+	}
+	
+	private synchronized void setWall(int cell)
+	{
+		if (isSet(walls, cell))
+			return;
+		set(walls, cell);
+		if (wallIndex != null)
+			wallIndex.add(cell);
+	}
+	
+	private synchronized void clearWall(int cell)
+	{
+		if (!isSet(walls, cell))
+			return;
+		clear(walls, cell);
+		if (wallIndex != null)
+			wallIndex.remove(cell);
+	}
+	
+	private synchronized void setFruit(int cell)
+	{
+		if (isSet(fruits, cell))
+			return;
+		set(fruits, cell);
+		if (fruitIndex != null)
+			fruitIndex.add(cell);
+	}
+	
+	private synchronized void clearFruit(int cell)
+	{
+		if (!isSet(fruits, cell))
+			return;
+		clear(fruits, cell);
+		if (fruitIndex != null)
+			fruitIndex.remove(cell);
+	}
+	
+	private static boolean isWallType(GameObjectType type)
+	{
+		return type.getName().equals("Wall");
+	}
+	
+	private static boolean isFruitType(GameObjectType type)
+	{
+		return type.getName().equalsIgnoreCase("Fruit");
+	}
+	
+	private static boolean isSet(long[] plane, int cell)
+	{
+		return (plane[cell >>> 6] & (1L << cell)) != 0;
+	}
+	
+	private static void set(long[] plane, int cell)
+	{
+		plane[cell >>> 6] |= (1L << cell);
+	}
+	
+	private static void clear(long[] plane, int cell)
+	{
+		plane[cell >>> 6] &= ~(1L << cell);
 	}
 }
@@ -0,0 +1,90 @@
+package gameLogic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The squares of a board that hold one kind of object, kept next to the board's bit
+ * plane for that object. There are only ever a handful of fruits and a ring of walls,
+ * so the squares are kept in a plain array and updates search it linearly.
+ *
+ * The positions are handed out as an unmodifiable list that is built once and then
+ * shared until the squares change again.
+ *
+ * @see		Board
+ */
+final class CellIndex
+{
+	private final int width, height;
+	private int[] cells = new int[16];
+	private int count = 0;
+	private List<Position> positions = null;
+	
+	/**
+	 * Creates an index of the squares set in a bit plane, in time proportional to the
+	 * number of words in the plane and squares set.
+	 */
+	CellIndex(long[] plane, int width, int height)
+	{
+		this.width = width;
+		this.height = height;
+		
+		for (int word = 0; word < plane.length; ++word)
+		{
+			long bits = plane[word];
+			while (bits != 0)
+			{
+				add((word << 6) + Long.numberOfTrailingZeros(bits));
+				bits &= bits - 1;
+			}
+		}
+	}
+	
+	/**
+	 * Adds a square. The caller makes sure it isn't in the index already.
+	 */
+	void add(int cell)
+	{
+		if (count == cells.length)
+			cells = Arrays.copyOf(cells, 2 * cells.length);
+		cells[count++] = cell;
+		positions = null;
+	}
+	
+	void remove(int cell)
+	{
+		for (int i = 0; i < count; ++i)
+		{
+			if (cells[i] == cell)
+			{
+				cells[i] = cells[--count];
+				positions = null;
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Gets the positions of the squares, ordered by x and then by y like a scan of the
+	 * board column by column would find them.
+	 */
+	List<Position> getPositions(PositionTable table)
+	{
+		if (positions != null)
+			return positions;
+		
+		//~ Sort by column first, then by row.
+		int[] keys = new int[count];
+		for (int i = 0; i < count; ++i)
+			keys[i] = (cells[i] % width) * height + cells[i] / width;
+		Arrays.sort(keys);
+		
+		ArrayList<Position> list = new ArrayList<Position>(count);
+		for (int key : keys)
+			list.add(table.get(key / height, key % height));
+		positions = Collections.unmodifiableList(list);
+		return positions;
+	}
+}
@@ -0,0 +1,129 @@
+package gameLogic;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Hands out the decisions of a turn to the brains of all living snakes and collects
+ * their answers. Every snake gets its own DecisionWorker, which is reused for the whole
+ * game. A worker whose brain takes too long is stopped and replaced by a fresh one the
+ * next time its snake has to decide.
+ *
+ * Workers report back as soon as their brain has answered, so a turn can move on
+ * the moment the last brain is done instead of polling until the time is up.
+ *
+ * @see		DecisionWorker
+ */
+class DecisionDispatcher
+{
+	private Map<Snake, DecisionWorker> workers = new HashMap<Snake, DecisionWorker>();
+	
+	//~ Numbers the rounds of decisions, so answers arriving after their round is over are ignored.
+	private int round = 0;
+	private int undecided = 0;
+	
+	/**
+	 * Asks the brain of a snake to start deciding its next move.
+	 * 
+	 * @param	snake		The snake that should decide.
+	 * @param	currentState	The game state the brain gets to look at.
+	 * @param	statistics	Where the time the brain takes is recorded.
+	 */
+	synchronized void dispatch(Snake snake, GameState currentState, ThinkingStatistics statistics)
+	{
+		DecisionWorker worker = workers.get(snake);
+		if (worker == null)
+		{
+			worker = new DecisionWorker(snake, this, statistics);
+			workers.put(snake, worker);
+			worker.start();
+		}
+		++undecided;
+		worker.submit(currentState, round);
+	}
+	
+	/**
+	 * Waits until every brain that was dispatched this turn has answered, or until
+	 * the thinking time is up, whichever comes first.
+	 * 
+	 * @param	thinkingTime	The maximum time to wait, in milliseconds.
+	 */
+	synchronized void awaitDecisions(int thinkingTime)
+	{
+		long remaining = TimeUnit.MILLISECONDS.toNanos(thinkingTime);
+		long deadline = System.nanoTime() + remaining;
+		try
+		{
+			while (undecided > 0 && remaining > 0)
+			{
+				TimeUnit.NANOSECONDS.timedWait(this, remaining);
+				remaining = deadline - System.nanoTime();
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		
+		++round;
+		undecided = 0;
+	}
+	
+	/**
+	 * Called by a worker when its brain has answered.
+	 * 
+	 * @param	decisionRound	The round the answer belongs to.
+	 */
+	synchronized void decisionMade(int decisionRound)
+	{
+		if (decisionRound == round && --undecided == 0)
+			notifyAll();
+	}
+	
+	/**
+	 * Gets the move a snake's brain decided on this turn.
+	 * 
+	 * @param	snake	The snake whose move we want.
+	 * @return	The direction the brain wants to move in.
+	 * @throws	TimeoutException if the brain still hasn't decided. Its worker is
+	 *			stopped, and the snake will get a new one next turn.
+	 * @throws	Throwable whatever the brain threw while deciding.
+	 */
+	Direction demandNextMove(Snake snake) throws Throwable
+	{
+		DecisionWorker worker = workers.get(snake);
+		
+		//~ This snake has taken too long to decide, and will automatically move forward.
+		if (worker.isBusy())
+		{
+			workers.remove(snake);
+			worker.retire();
+			throw new TimeoutException("The brain has taken too long to decide. Summon the minions.");
+		}
+		
+		return worker.takeNextMove();
+	}
+	
+	/**
+	 * Stops the worker of a snake that won't be asked to decide anymore, for example
+	 * because it has died.
+	 */
+	void dismiss(Snake snake)
+	{
+		DecisionWorker worker = workers.remove(snake);
+		if (worker != null)
+			worker.retire();
+	}
+	
+	/**
+	 * Stops all workers.
+	 */
+	void shutdown()
+	{
+		for (DecisionWorker worker : workers.values())
+			worker.retire();
+		workers.clear();
+	}
+}
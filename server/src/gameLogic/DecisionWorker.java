@@ -0,0 +1,138 @@
+package gameLogic;
+
+/**
+ * A long-lived thread that asks a single snake's brain for its next move, once per turn.
+ * Keeping one thread per snake for the whole game avoids starting a new thread every
+ * turn, and lets a brain keep running on the same thread from turn to turn.
+ *
+ * @see		DecisionDispatcher
+ */
+class DecisionWorker extends Thread
+{
+	private final Snake snake;
+	private final DecisionDispatcher dispatcher;
+	private final ThinkingStatistics statistics;
+	private GameState pendingState = null;
+	private int pendingRound;
+	private Direction nextMove = null;
+	private Throwable exception = null;
+	private boolean busy = false;
+	private boolean running = true;
+	
+	DecisionWorker(Snake snake, DecisionDispatcher dispatcher, ThinkingStatistics statistics)
+	{
+		super("Brain of " + snake);
+		this.snake = snake;
+		this.dispatcher = dispatcher;
+		this.statistics = statistics;
+		setDaemon(true);
+	}
+	
+	public void run()
+	{
+		while (true)
+		{
+			GameState currentState;
+			int round;
+			synchronized (this)
+			{
+				while (running && pendingState == null)
+				{
+					try
+					{
+						wait();
+					}
+					catch (InterruptedException e)
+					{
+						// Only retire() interrupts us, and it clears running first.
+					}
+				}
+				
+				if (!running)
+					return;
+				
+				currentState = pendingState;
+				round = pendingRound;
+				pendingState = null;
+			}
+			
+			Direction move = null;
+			Throwable thrown = null;
+			long start = System.nanoTime();
+			try
+			{
+				move = snake.getBrain().getNextMove(snake, currentState);
+			}
+			catch (Throwable t)
+			{
+				thrown = t;
+			}
+			statistics.recordThinkTime(System.nanoTime() - start);
+			
+			synchronized (this)
+			{
+				nextMove = move;
+				exception = thrown;
+				busy = false;
+			}
+			dispatcher.decisionMade(round);
+		}
+	}
+	
+	/**
+	 * Hands this worker the state of a new turn. The brain starts thinking about it
+	 * right away, and the dispatcher is told when it is done.
+	 */
+	synchronized void submit(GameState currentState, int round)
+	{
+		pendingState = currentState;
+		pendingRound = round;
+		nextMove = null;
+		exception = null;
+		busy = true;
+		notifyAll();
+	}
+	
+	synchronized boolean isBusy()
+	{
+		return busy;
+	}
+	
+	/**
+	 * Returns the move the brain decided on this turn, or throws whatever the
+	 * brain threw at us.
+	 */
+	synchronized Direction takeNextMove() throws Throwable
+	{
+		if (exception != null)
+			throw exception;
+		
+		return nextMove;
+	}
+	
+	/**
+	 * Stops this worker for good, even if its brain is still thinking.
+	 */
+	@SuppressWarnings("deprecation")
+	void retire()
+	{
+		synchronized (this)
+		{
+			running = false;
+			notifyAll();
+		}
+		
+		if (!isBusy())
+			return;
+		
+		try
+		{
+			stop();
+		}
+		catch (UnsupportedOperationException e)
+		{
+			//~ Newer JVMs can't stop threads; the best we can do is ask nicely.
+			interrupt();
+		}
+	}
+}
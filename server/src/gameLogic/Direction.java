@@ -34,6 +34,19 @@ public enum Direction
 	 * @return	The next position if movement continues in this direction.
 	 */
 	public Position calculateNextPosition(Position oldPosition)
+	{
+		return calculateNextPosition(oldPosition, null);
+	}
+	
+	/**
+	 * Gets the next position in this direction, as the canonical Position of a board
+	 * if it is on that board.
+	 * 
+	 * @param	oldPosition	The current position of the snake.
+	 * @param	table		The table of the board, or null for a new Position.
+	 * @return	The next position if movement continues in this direction.
+	 */
+	Position calculateNextPosition(Position oldPosition, PositionTable table)
 	{
 		int x = oldPosition.getX(), y = oldPosition.getY();
 		
@@ -56,7 +69,7 @@ public enum Direction
 				break;
 		}
 		
-		return new Position(x, y);
+		return PositionTable.intern(table, x, y);
 	}
 	
 	/**
@@ -1,20 +1,55 @@
 package gameLogic;
 
 import java.util.Set;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.io.Serializable;
 
+/**
+ * A full copy of the game at one turn. Frames are kept as keyframes in a RecordedGame,
+ * and the turns in between are rebuilt by applying FrameDeltas to a copy of a keyframe.
+ */
 public class Frame implements Serializable
 {
 	private Board board;
-	private Set<Snake> snakes = new HashSet<Snake>();
+	private Set<Snake> snakes = new LinkedHashSet<Snake>();
+	private Snake[] snakesById;
 	
 	public Frame(Board board, Set<Snake> snakes)
 	{
-		this.board = new Board(board);
-
+		int maxId = -1;
 		for (Snake snake : snakes)
-			this.snakes.add(new Snake(snake));
+			maxId = Math.max(maxId, snake.getId());
+		snakesById = new Snake[maxId + 1];
+		
+		for (Snake snake : snakes)
+		{
+			Snake copy = new Snake(snake);
+			this.snakes.add(copy);
+			if (copy.getId() >= 0)
+				snakesById[copy.getId()] = copy;
+		}
+		
+		//~ The board should refer to our copies of the snakes, not the originals.
+		this.board = new Board(board);
+		this.board.replaceSnakes(snakesById);
+	}
+	
+	Frame(Frame other)
+	{
+		this(other.board, other.snakes);
+	}
+	
+	/**
+	 * Creates a frame that takes ownership of the given board and snakes instead of
+	 * copying them. The board must already refer to these snake objects.
+	 */
+	Frame(Board board, Snake[] snakesById)
+	{
+		this.board = board;
+		this.snakesById = snakesById;
+		for (Snake snake : snakesById)
+			if (snake != null)
+				snakes.add(snake);
 	}
 	
 	public Board getBoard()
@@ -26,4 +61,41 @@ public class Frame implements Serializable
 	{
 		return snakes;
 	}
+	
+	/**
+	 * Moves this frame one turn forward by applying the changes of a tick to it.
+	 * 
+	 * @param	delta	What happened during the tick.
+	 * @param	fruit	The type of fruit that spawns.
+	 */
+	void apply(FrameDelta delta, GameObjectType fruit)
+	{
+		for (int i = 0; i < delta.getMoveCount(); ++i)
+		{
+			Snake snake = snakesById[delta.getMovedSnake(i)];
+			board.moveSnakeHead(snake, delta.getMoveDirection(i));
+			if (!delta.isGrowth())
+				board.removeSnakeTail(snake);
+		}
+		
+		for (int i = 0; i < delta.getKillCount(); ++i)
+			snakesById[delta.getKilledSnake(i)].kill();
+		
+		for (int i = 0; i < delta.getMoveCount(); ++i)
+		{
+			Snake snake = snakesById[delta.getMovedSnake(i)];
+			if (!snake.isDead())
+				snake.increaseLifespan();
+		}
+		
+		for (int i = 0; i < delta.getEatenCount(); ++i)
+		{
+			Snake snake = snakesById[delta.getEater(i)];
+			board.eatFruit(board.cellOf(snake.getHeadPosition()));
+			snake.addScore(delta.getEatenValue(i));
+		}
+		
+		if (delta.hasSpawnedFruit())
+			board.addGameObject(fruit, board.getPosition(delta.getSpawnedFruitX(), delta.getSpawnedFruitY()));
+	}
 }
@@ -0,0 +1,161 @@
+package gameLogic;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * The changes made to the game during a single tick: which way each living snake moved,
+ * whether the snakes grew, which snakes were killed, which snakes ate fruit and where a
+ * new fruit spawned. Applying the delta to the frame before the tick gives the frame
+ * after it.
+ *
+ * @see		RecordedGame
+ */
+class FrameDelta implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+	
+	private static final Direction[] DIRECTIONS = Direction.values();
+	private static final int[] NONE = new int[0];
+	
+	private final boolean growth;
+	
+	//~ Moves are packed as snake id << 2 | direction ordinal.
+	private int[] moves = NONE;
+	private int moveCount = 0;
+	
+	private int[] kills = NONE;
+	private int killCount = 0;
+	
+	//~ Pairs of snake id and the value of the fruit it ate.
+	private int[] eaten = NONE;
+	private int eatenCount = 0;
+	
+	//~ The square of the spawned fruit as x << 16 | y, or -1 if no fruit spawned.
+	private int spawnedFruit = -1;
+	
+	FrameDelta(boolean growth)
+	{
+		this.growth = growth;
+	}
+	
+	void recordMove(Snake snake, Direction dir)
+	{
+		recordMove(snake.getId(), dir);
+	}
+	
+	void recordMove(int snakeId, Direction dir)
+	{
+		moves = append(moves, moveCount++, snakeId << 2 | dir.ordinal());
+	}
+	
+	void recordKill(Snake snake)
+	{
+		recordKill(snake.getId());
+	}
+	
+	void recordKill(int snakeId)
+	{
+		kills = append(kills, killCount++, snakeId);
+	}
+	
+	void recordFruitEaten(Snake snake, int value)
+	{
+		recordFruitEaten(snake.getId(), value);
+	}
+	
+	void recordFruitEaten(int snakeId, int value)
+	{
+		eaten = append(eaten, 2 * eatenCount, snakeId);
+		eaten = append(eaten, 2 * eatenCount + 1, value);
+		++eatenCount;
+	}
+	
+	void recordFruitSpawned(Position p)
+	{
+		recordFruitSpawned(p.getX(), p.getY());
+	}
+	
+	void recordFruitSpawned(int x, int y)
+	{
+		spawnedFruit = x << 16 | y;
+	}
+	
+	/**
+	 * Drops the spare room left in the arrays while the tick was being recorded.
+	 */
+	void trim()
+	{
+		moves = Arrays.copyOf(moves, moveCount);
+		kills = Arrays.copyOf(kills, killCount);
+		eaten = Arrays.copyOf(eaten, 2 * eatenCount);
+	}
+	
+	boolean isGrowth()
+	{
+		return growth;
+	}
+	
+	int getMoveCount()
+	{
+		return moveCount;
+	}
+	
+	int getMovedSnake(int index)
+	{
+		return moves[index] >>> 2;
+	}
+	
+	Direction getMoveDirection(int index)
+	{
+		return DIRECTIONS[moves[index] & 3];
+	}
+	
+	int getKillCount()
+	{
+		return killCount;
+	}
+	
+	int getKilledSnake(int index)
+	{
+		return kills[index];
+	}
+	
+	int getEatenCount()
+	{
+		return eatenCount;
+	}
+	
+	int getEater(int index)
+	{
+		return eaten[2 * index];
+	}
+	
+	int getEatenValue(int index)
+	{
+		return eaten[2 * index + 1];
+	}
+	
+	boolean hasSpawnedFruit()
+	{
+		return spawnedFruit >= 0;
+	}
+	
+	int getSpawnedFruitX()
+	{
+		return spawnedFruit >>> 16;
+	}
+	
+	int getSpawnedFruitY()
+	{
+		return spawnedFruit & 0xFFFF;
+	}
+	
+	private static int[] append(int[] array, int index, int value)
+	{
+		if (index == array.length)
+			array = Arrays.copyOf(array, Math.max(4, array.length * 2));
+		array[index] = value;
+		return array;
+	}
+}
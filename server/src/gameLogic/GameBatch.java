@@ -0,0 +1,244 @@
+package gameLogic;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Plays a batch of independent games on several threads at once. Every game is played
+ * on a session of its own, made by a {@link SessionFactory}, so the games share nothing
+ * and their number of threads decides how many cores the batch gets to use.
+ *
+ * Each thread counts the placements of its own games, and the counts are only added up
+ * once all threads are done, so the threads never wait on each other while playing. The
+ * same goes for the tick metrics of the games.
+ *
+ * @see		Session
+ */
+public class GameBatch
+{
+	/**
+	 * Makes the session of each game in a batch. The session must be ready to start,
+	 * and its snakes must have brains of their own, not shared with any other session.
+	 * It is called from the threads of the batch, possibly several at a time.
+	 */
+	public interface SessionFactory
+	{
+		Session createSession(int game) throws Exception;
+	}
+	
+	/**
+	 * Told about every game of a batch as it ends. It is called from the threads of the
+	 * batch, possibly several at a time, and games don't end in order.
+	 */
+	public interface Listener
+	{
+		void gameFinished(int game, Session session);
+		
+		void gameFailed(int game, Exception e);
+	}
+	
+	private final SessionFactory factory;
+	private final int numberOfGames;
+	private final int parallelism;
+	private Listener listener = null;
+	
+	private final AtomicInteger nextGame = new AtomicInteger();
+	private Map<String, int[]> placements = new TreeMap<String, int[]>();
+	private int failedGames = 0;
+	private TickMetrics tickMetrics = new TickMetrics();
+	
+	/**
+	 * @param	factory			Makes the session of each game.
+	 * @param	numberOfGames	The number of games in the batch.
+	 * @param	parallelism		The number of games played at once.
+	 */
+	public GameBatch(SessionFactory factory, int numberOfGames, int parallelism)
+	{
+		if (numberOfGames < 0)
+			throw new IllegalArgumentException("Negative number of games: " + numberOfGames);
+		if (parallelism < 1)
+			throw new IllegalArgumentException("At least one game has to be played at a time, not " + parallelism);
+		
+		this.factory = factory;
+		this.numberOfGames = numberOfGames;
+		this.parallelism = Math.min(parallelism, Math.max(1, numberOfGames));
+	}
+	
+	public void setListener(Listener listener)
+	{
+		this.listener = listener;
+	}
+	
+	/**
+	 * Plays all the games of the batch, and returns when they have all ended.
+	 *
+	 * @throws	InterruptedException	If this thread is interrupted while waiting. The
+	 *									games being played are then finished, but no new
+	 *									ones are started.
+	 */
+	public void run() throws InterruptedException
+	{
+		Worker[] workers = new Worker[parallelism];
+		for (int i = 0; i < parallelism; ++i)
+		{
+			workers[i] = new Worker(i);
+			workers[i].start();
+		}
+		
+		try
+		{
+			for (Worker worker : workers)
+				worker.join();
+		}
+		catch (InterruptedException e)
+		{
+			nextGame.set(numberOfGames);
+			throw e;
+		}
+		
+		for (Worker worker : workers)
+		{
+			failedGames += worker.failedGames;
+			tickMetrics.add(worker.tickMetrics);
+			for (Map.Entry<String, int[]> entry : worker.placements.entrySet())
+				addPlacements(entry.getKey(), entry.getValue());
+		}
+	}
+	
+	/**
+	 * Gets how many times each snake got each placement, by name. The first element
+	 * of a snake's array counts its wins. Only complete once {@link #run()} has returned.
+	 *
+	 * @return	The placement counts of every snake.
+	 */
+	public Map<String, int[]> getPlacementFrequencies()
+	{
+		return placements;
+	}
+	
+	/**
+	 * Gets the number of games that couldn't be played to the end.
+	 */
+	public int getFailedGames()
+	{
+		return failedGames;
+	}
+	
+	/**
+	 * Gets the tick metrics of all games that were played to the end, added together.
+	 * Only complete once {@link #run()} has returned.
+	 */
+	public TickMetrics getTickMetrics()
+	{
+		return tickMetrics;
+	}
+	
+	private void addPlacements(String name, int[] counts)
+	{
+		int[] total = placements.get(name);
+		if (total == null)
+			total = new int[counts.length];
+		else if (total.length < counts.length)
+			total = Arrays.copyOf(total, counts.length);
+		
+		for (int place = 0; place < counts.length; ++place)
+			total[place] += counts[place];
+		placements.put(name, total);
+	}
+	
+	private class Worker extends Thread
+	{
+		//~ Only touched by this thread until it has been joined.
+		private Map<String, int[]> placements = new TreeMap<String, int[]>();
+		private int failedGames = 0;
+		private TickMetrics tickMetrics = new TickMetrics();
+		
+		Worker(int index)
+		{
+			super("Game batch " + index);
+			setDaemon(true);
+		}
+		
+		public void run()
+		{
+			int game;
+			while ((game = nextGame.getAndIncrement()) < numberOfGames)
+			{
+				Session session;
+				try
+				{
+					session = factory.createSession(game);
+				}
+				catch (Exception e)
+				{
+					fail(game, e);
+					continue;
+				}
+				
+				Exception failure = null;
+				try
+				{
+					while (!session.hasEnded())
+						session.tick();
+				}
+				catch (Exception e)
+				{
+					failure = e;
+				}
+				finally
+				{
+					//~ The brains' threads are let go of even if the game broke down.
+					try
+					{
+						session.cleanup();
+					}
+					catch (Exception e)
+					{
+						if (failure == null)
+							failure = e;
+						else
+							failure.addSuppressed(e);
+					}
+				}
+				
+				if (failure != null)
+				{
+					fail(game, failure);
+					continue;
+				}
+				
+				countPlacements(session.getGameResult().getWinners());
+				tickMetrics.add(session.getTickMetrics());
+				if (listener != null)
+					listener.gameFinished(game, session);
+			}
+		}
+		
+		private void fail(int game, Exception e)
+		{
+			++failedGames;
+			if (listener != null)
+				listener.gameFailed(game, e);
+		}
+		
+		private void countPlacements(List<List<Snake>> winners)
+		{
+			for (int place = 0; place < winners.size(); ++place)
+			{
+				for (Snake snake : winners.get(place))
+				{
+					int[] counts = placements.get(snake.getName());
+					if (counts == null)
+						counts = new int[winners.size()];
+					else if (counts.length <= place)
+						counts = Arrays.copyOf(counts, winners.size());
+					++counts[place];
+					placements.put(snake.getName(), counts);
+				}
+			}
+		}
+	}
+}
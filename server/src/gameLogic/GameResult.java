@@ -3,19 +3,28 @@ package gameLogic;
 import java.util.Set;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.Map;
 
 public class GameResult
 {
 	private Set<Snake> snakes;
 	private Metadata metadata;
 	private RecordedGame recordedGame;
+	private Map<Snake, ThinkingStatistics> thinkingStatistics;
 	
 	public GameResult(Set<Snake> snakes, Metadata metadata, RecordedGame recordedGame)
+	{
+		this(snakes, metadata, recordedGame, Collections.<Snake, ThinkingStatistics>emptyMap());
+	}
+	
+	public GameResult(Set<Snake> snakes, Metadata metadata, RecordedGame recordedGame, Map<Snake, ThinkingStatistics> thinkingStatistics)
 	{
 		this.metadata = metadata;		
 		this.snakes = snakes;
 		this.recordedGame = recordedGame;
+		this.thinkingStatistics = thinkingStatistics;
 	}
 	
 	public RecordedGame getRecordedGame()
@@ -23,6 +32,18 @@ public class GameResult
 		return recordedGame;
 	}
 	
+	/**
+	 * Gets how long the brain of each snake took to decide, and how often it was too
+	 * slow, made an invalid move or threw an exception. Games that were loaded from a
+	 * replay have no statistics.
+	 *
+	 * @return	The thinking statistics of each snake.
+	 */
+	public Map<Snake, ThinkingStatistics> getThinkingStatistics()
+	{
+		return Collections.unmodifiableMap(thinkingStatistics);
+	}
+	
 	public List<List<Snake>> getWinners()
 	{
 		ArrayList<List<Snake>> results = new ArrayList<List<Snake>>();
@@ -0,0 +1,52 @@
+package gameLogic;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * An immutable copy of the game at the start of a tick. A single snapshot is taken
+ * each tick and shared read-only by the GameStates handed to every brain, so the
+ * board only has to be copied once no matter how many snakes are playing.
+ *
+ * @see		GameState
+ */
+final class GameSnapshot
+{
+	private final Board board;
+	private final Set<Snake> snakes;
+	private final Metadata metadata;
+	
+	GameSnapshot(Board currentBoard, Set<Snake> snakes, Metadata metadata)
+	{
+		this.board = new Board(currentBoard);
+		this.snakes = Collections.unmodifiableSet(new LinkedHashSet<Snake>(snakes));
+		this.metadata = metadata;
+	}
+	
+	/**
+	 * Creates a snapshot of a frame that is never changed again, sharing its board and
+	 * snakes instead of copying them.
+	 */
+	GameSnapshot(Frame frame, Metadata metadata)
+	{
+		this.board = frame.getBoard();
+		this.snakes = Collections.unmodifiableSet(frame.getSnakes());
+		this.metadata = metadata;
+	}
+	
+	Board getBoard()
+	{
+		return board;
+	}
+	
+	Set<Snake> getSnakes()
+	{
+		return snakes;
+	}
+	
+	Metadata getMetadata()
+	{
+		return metadata;
+	}
+}
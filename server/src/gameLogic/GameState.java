@@ -2,7 +2,7 @@ package gameLogic;
 
 import java.util.ArrayList;
 import java.util.Set;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 
 /**
  * The GameState is a representation of the game at a given moment in time. It contains references
@@ -10,6 +10,9 @@ import java.util.HashSet;
  * the current Metadata (turns until growth/spawning of fruit, among other things), all snakes
  * participating in this game session, and an ErrorState enum.
  *
+ * The board, snakes and metadata come from a snapshot that is shared by the game states of
+ * every snake during a turn; only the ErrorState belongs to a single snake.
+ *
  * @author 	Sixten Hilborn
  * @author	Arian Jafari
  */
@@ -17,15 +20,21 @@ import java.util.HashSet;
 public class GameState
 {
 	private ErrorState errorState;
+	private GameSnapshot snapshot;
 	private Board board;
-	private Set<Snake> snakes;
+	private Set<Snake> snakes = null;
 	private Metadata metadata;
 	
 	GameState(Board currentBoard, Set<Snake> snakes, Metadata metadata, ErrorState errorState)
 	{
-		board = new Board(currentBoard);
-		this.snakes = new HashSet<Snake>(snakes);
-		this.metadata = metadata;
+		this(new GameSnapshot(currentBoard, snakes, metadata), errorState);
+	}
+	
+	GameState(GameSnapshot snapshot, ErrorState errorState)
+	{
+		this.snapshot = snapshot;
+		this.board = snapshot.getBoard();
+		this.metadata = snapshot.getMetadata();
 		this.errorState = errorState;
 	}
 	
@@ -37,6 +46,9 @@ public class GameState
 	 */
 	public Set<Snake> getSnakes()
 	{
+		//~ Brains are free to modify their set, so each GameState gets its own copy.
+		if (snakes == null)
+			snakes = new LinkedHashSet<Snake>(snapshot.getSnakes());
 		return snakes;
 	}
 	
@@ -91,7 +103,7 @@ public class GameState
 	public boolean willCollide(Snake snake, Direction dir)
 	{
 		Position currentHeadPosition = snake.getHeadPosition();
-		Position nextHeadPosition = calculateNextPosition(dir, currentHeadPosition);
+		Position nextHeadPosition = dir.calculateNextPosition(currentHeadPosition, board.positionTable());
 		return (board.getSquare(nextHeadPosition).isLethal());
 	}
 	
@@ -132,42 +144,30 @@ public class GameState
 	 * Gets a list containing the positions of all the fruits currently on the board. Note that 
 	 * the list will be empty if the number of fruits on the board is 0.
 	 * 
+	 * The list is a copy of the board's index of the fruits, so it is built without
+	 * looking at the rest of the board, and can be changed freely.
+	 * 
 	 * @return	The positions of the fruits currently on the board.
+	 * @see		Board#getFruitPositions()
 	 */
 	public ArrayList<Position> getFruits()
 	{
-		ArrayList<Position> positionsContainingFruit = new ArrayList<Position>();
-		for (int x = 0; x < metadata.getBoardWidth(); ++x)
-		{
-			for (int y = 0; y < metadata.getBoardHeight(); ++y)
-			{
-				Position currentPosition = new Position(x, y);
-				if (board.hasFruit(currentPosition))
-					positionsContainingFruit.add(currentPosition);
-			}
-		}
-		return positionsContainingFruit;
+		return new ArrayList<Position>(board.getFruitPositions());
 	}
 	
 	/**
 	 * Gets a list containing the positions of all the walls currently on the board. Note that 
 	 * the list will be empty if the number of walls on the board is 0.
 	 * 
+	 * The list is a copy of the board's index of the walls, so it is built without
+	 * looking at the rest of the board, and can be changed freely.
+	 * 
 	 * @return	The positions of the walls currently on the board.
+	 * @see		Board#getWallPositions()
 	 */
 	public ArrayList<Position> getWalls()
 	{
-		ArrayList<Position> positionsContainingWall = new ArrayList<Position>();
-		for (int x = 0; x < metadata.getBoardWidth(); ++x)
-		{
-			for (int y = 0; y < metadata.getBoardHeight(); ++y)
-			{
-				Position currentPosition = new Position(x, y);
-				if (board.hasWall(currentPosition))
-					positionsContainingWall.add(currentPosition);
-			}
-		}
-		return positionsContainingWall;
+		return new ArrayList<Position>(board.getWallPositions());
 	}
 	
 	/**
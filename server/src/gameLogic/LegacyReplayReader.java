@@ -0,0 +1,363 @@
+package gameLogic;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Reads replays saved by older versions of Snaykuu, which wrote the whole RecordedGame
+ * with Java serialization. The classes in those files no longer match the game classes,
+ * so they are read into copies of the old classes kept here, and every old frame becomes
+ * a keyframe of the new RecordedGame.
+ *
+ * @see		RecordedGame#loadFromFile(java.io.File)
+ */
+final class LegacyReplayReader
+{
+	private static final Map<String, Class<?>> OLD_CLASSES = new HashMap<String, Class<?>>();
+	
+	static
+	{
+		OLD_CLASSES.put("gameLogic.RecordedGame", OldRecordedGame.class);
+		OLD_CLASSES.put("gameLogic.Metadata", OldMetadata.class);
+		OLD_CLASSES.put("gameLogic.Frame", OldFrame.class);
+		OLD_CLASSES.put("gameLogic.Board", OldBoard.class);
+		OLD_CLASSES.put("gameLogic.Square", OldSquare.class);
+		OLD_CLASSES.put("gameLogic.GameObject", OldGameObject.class);
+		OLD_CLASSES.put("gameLogic.GameObjectType", OldGameObjectType.class);
+		OLD_CLASSES.put("gameLogic.Snake", OldSnake.class);
+		OLD_CLASSES.put("gameLogic.SnakeSegment", OldSnakeSegment.class);
+		OLD_CLASSES.put("gameLogic.Position", OldPosition.class);
+	}
+	
+	private LegacyReplayReader()
+	{
+	}
+	
+	static RecordedGame read(InputStream in) throws IOException, ClassNotFoundException
+	{
+		OldRecordedGame old;
+		ObjectInputStream objectStream = new OldClassInputStream(in);
+		try
+		{
+			old = (OldRecordedGame)objectStream.readObject();
+		}
+		catch (ClassCastException e)
+		{
+			throw new IOException("Not a replay file", e);
+		}
+		
+		if (old.frames == null || old.frames.isEmpty())
+			throw new IOException("The replay file has no turns");
+		
+		return convert(old);
+	}
+	
+	private static RecordedGame convert(OldRecordedGame old)
+	{
+		Map<OldGameObjectType, GameObjectType> types = new HashMap<OldGameObjectType, GameObjectType>();
+		GameObjectType fruitType = null;
+		for (OldFrame frame : old.frames)
+			for (OldSquare[] column : frame.board.board)
+				for (OldSquare square : column)
+					for (OldGameObject object : square.objects)
+						if (fruitType == null && !(object instanceof OldSnake) && "Fruit".equalsIgnoreCase(object.type.name))
+							fruitType = convert(object.type, types);
+		
+		RecordedGame game = new RecordedGame(old.metadata.convert(), fruitType, 1);
+		
+		//~ The old snakes had no ids. They are numbered by name and colour in the first frame,
+		//~ and followed from frame to frame by their name, colour and position.
+		OldFrame first = old.frames.getFirst();
+		OldSnake[] byId = first.snakes.toArray(new OldSnake[first.snakes.size()]);
+		Arrays.sort(byId, new Comparator<OldSnake>()
+		{
+			public int compare(OldSnake a, OldSnake b)
+			{
+				int byName = String.valueOf(a.name).compareTo(String.valueOf(b.name));
+				return byName != 0 ? byName : Integer.compare(a.rgb(), b.rgb());
+			}
+		});
+		
+		for (OldFrame frame : old.frames)
+		{
+			if (frame != first)
+			{
+				OldSnake[] next = new OldSnake[byId.length];
+				for (OldSnake snake : frame.snakes)
+				{
+					int id = follow(snake, byId, next);
+					if (id >= 0)
+						next[id] = snake;
+				}
+				byId = next;
+				game.addDelta(null);
+			}
+			game.addKeyframe(convert(frame, byId, types));
+		}
+		
+		game.setCurrentReplayFrame(old.currentFrameIndex);
+		return game;
+	}
+	
+	/**
+	 * Finds the id of a snake given the snakes of the frame before, or -1 if there
+	 * is no snake it could be.
+	 */
+	private static int follow(OldSnake snake, OldSnake[] previous, OldSnake[] taken)
+	{
+		int candidate = -1;
+		for (int id = 0; id < previous.length; ++id)
+		{
+			OldSnake before = previous[id];
+			if (before == null || taken[id] != null || !before.isSameAs(snake))
+				continue;
+			if (candidate < 0)
+				candidate = id;
+			if (before.segments.isEmpty() || snake.segments.isEmpty())
+				continue;
+			
+			OldPosition head = before.segments.getFirst();
+			if (head.equals(snake.segments.getFirst()) || (snake.segments.size() > 1 && head.equals(snake.segments.get(1))))
+				return id;
+		}
+		return candidate;
+	}
+	
+	private static Frame convert(OldFrame oldFrame, OldSnake[] byId, Map<OldGameObjectType, GameObjectType> types)
+	{
+		OldSquare[][] squares = oldFrame.board.board;
+		Board board = new Board(squares.length, squares[0].length);
+		
+		Snake[] snakesById = new Snake[byId.length];
+		for (int id = 0; id < byId.length; ++id)
+		{
+			OldSnake old = byId[id];
+			if (old == null)
+				continue;
+			
+			Snake snake = new Snake(convert(old.type, types), old.name, null, old.color);
+			snake.setId(id);
+			snake.restoreStatistics(old.score, old.lifespan, old.isDead);
+			Iterator<OldSnakeSegment> directions = old.directionLog.iterator();
+			for (OldPosition p : old.segments)
+			{
+				Direction dir = directions.hasNext() ? directions.next().dir : null;
+				snake.appendSegment(board.getPosition(p.x, p.y), dir != null ? dir : Direction.NORTH);
+			}
+			snakesById[id] = snake;
+		}
+		
+		for (int x = 0; x < squares.length; ++x)
+			for (int y = 0; y < squares[x].length; ++y)
+				for (OldGameObject object : squares[x][y].objects)
+				{
+					int cell = board.cellOf(x, y);
+					if (object instanceof OldSnake)
+					{
+						//~ The squares hold the snakes as they were when the game was saved,
+						//~ so they are matched to this frame's snakes by name, colour and position.
+						Snake snake = findSnakeAt((OldSnake)object, byId, snakesById, x, y);
+						if (snake != null)
+							board.addGameObject(snake, cell);
+					}
+					else
+						board.addGameObject(new GameObject(convert(object.type, types)), cell);
+				}
+		
+		return new Frame(board, snakesById);
+	}
+	
+	private static Snake findSnakeAt(OldSnake object, OldSnake[] byId, Snake[] snakesById, int x, int y)
+	{
+		Snake fallback = null;
+		for (int id = 0; id < byId.length; ++id)
+		{
+			if (byId[id] == null || !byId[id].isSameAs(object))
+				continue;
+			if (byId[id].segments.contains(new OldPosition(x, y)))
+				return snakesById[id];
+			if (fallback == null)
+				fallback = snakesById[id];
+		}
+		return fallback;
+	}
+	
+	private static GameObjectType convert(OldGameObjectType old, Map<OldGameObjectType, GameObjectType> types)
+	{
+		if (old == null)
+			return null;
+		GameObjectType type = types.get(old);
+		if (type == null)
+		{
+			type = new GameObjectType(old.name, old.isLethal, old.value);
+			types.put(old, type);
+		}
+		return type;
+	}
+	
+	/**
+	 * Reads the old game classes as the copies below. The stream's class descriptors are
+	 * swapped for those of the copies, which have the same fields, so the data is read
+	 * field by field as if the copies had written it.
+	 */
+	private static class OldClassInputStream extends ObjectInputStream
+	{
+		OldClassInputStream(InputStream in) throws IOException
+		{
+			super(in);
+		}
+		
+		protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException
+		{
+			ObjectStreamClass desc = super.readClassDescriptor();
+			String name = desc.getName();
+			int dimensions = 0;
+			while (name.charAt(dimensions) == '[')
+				++dimensions;
+			if (dimensions > 0 && name.charAt(dimensions) == 'L')
+				name = name.substring(dimensions + 1, name.length() - 1);
+			
+			Class<?> old = OLD_CLASSES.get(name);
+			if (old == null)
+				return desc;
+			if (dimensions > 0)
+				old = Array.newInstance(old, new int[dimensions]).getClass();
+			return ObjectStreamClass.lookup(old);
+		}
+	}
+	
+	//~ Copies of the game classes as they were serialized by older versions. The names and
+	//~ types of the fields must stay exactly as they were, including the order of inheritance.
+	//~ Their own descriptors replace the stream's, so their serialVersionUIDs need not match.
+	
+	private static class OldRecordedGame implements Serializable
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private OldMetadata metadata;
+		private java.util.LinkedList<OldFrame> frames;
+		private int currentFrameIndex;
+	}
+	
+	private static class OldMetadata implements Serializable
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private int boardWidth;
+		private int boardHeight;
+		private int thinkingTime;
+		private int growthFrequency;
+		private int fruitFrequency;
+		private int fruitGoal;
+		
+		Metadata convert()
+		{
+			return new Metadata(boardWidth, boardHeight, growthFrequency, fruitFrequency, thinkingTime, fruitGoal, 0);
+		}
+	}
+	
+	private static class OldFrame implements Serializable
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private OldBoard board;
+		private Collection<OldSnake> snakes;
+	}
+	
+	private static class OldBoard implements Serializable
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private OldSquare[][] board;
+	}
+	
+	private static class OldSquare implements Serializable
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private ArrayList<OldGameObject> objects;
+	}
+	
+	private static class OldGameObjectType implements Serializable
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private String name;
+		private boolean isLethal;
+		private int value;
+	}
+	
+	private static class OldGameObject implements Serializable
+	{
+		private static final long serialVersionUID = 1L;
+		
+		OldGameObjectType type;
+	}
+	
+	private static class OldSnake extends OldGameObject
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private String name;
+		private Object brain;
+		private java.util.LinkedList<OldPosition> segments;
+		private java.util.LinkedList<OldSnakeSegment> directionLog;
+		private int score;
+		private int lifespan;
+		private boolean isDead;
+		private Color color;
+		
+		int rgb()
+		{
+			return color != null ? color.getRGB() : 0;
+		}
+		
+		boolean isSameAs(OldSnake other)
+		{
+			return String.valueOf(name).equals(String.valueOf(other.name)) && rgb() == other.rgb();
+		}
+	}
+	
+	private static class OldSnakeSegment implements Serializable
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private OldPosition pos;
+		private Direction dir;
+	}
+	
+	private static class OldPosition implements Serializable
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private int x, y;
+		
+		OldPosition(int x, int y)
+		{
+			this.x = x;
+			this.y = y;
+		}
+		
+		public boolean equals(Object other)
+		{
+			return other instanceof OldPosition && ((OldPosition)other).x == x && ((OldPosition)other).y == y;
+		}
+		
+		public int hashCode()
+		{
+			return x * 31 + y;
+		}
+	}
+}
@@ -0,0 +1,244 @@
+package gameLogic;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Random access to an indexed replay file. The file is memory mapped, and only the
+ * header and the keyframe index are read when it is opened. A turn is rebuilt by
+ * decoding the keyframe before it, found through the index, and the ticks up to it,
+ * so seeking takes the same time anywhere in the replay.
+ *
+ * The file is mapped in windows of at most WINDOW_SIZE bytes, which always start at a
+ * keyframe and hold all the records up to the next one, so replays larger than a single
+ * mapping can be read.
+ *
+ * @see		ReplayFormat
+ */
+final class MappedReplay
+{
+	private static final long WINDOW_SIZE = 1L << 28;
+	
+	private final File file;
+	private final ReplayFormat.Header header;
+	private final int turnCount;
+	private final long[] keyframeOffsets;
+	//~ Where the records end and the end record and the index begin.
+	private final long recordsEnd;
+	
+	private MappedByteBuffer window = null;
+	private long windowStart = 0, windowEnd = 0;
+	
+	//~ The last turn rebuilt, and where the record after it starts.
+	private Frame cursor = null;
+	private int cursorTurn = -1;
+	private long cursorOffset = 0;
+	
+	private MappedReplay(File file, FileChannel channel, int version) throws IOException
+	{
+		this.file = file;
+		
+		long size = channel.size();
+		ByteBuffer trailer = read(channel, size - ReplayFormat.TRAILER_SIZE, ReplayFormat.TRAILER_SIZE);
+		long indexOffset = trailer.getLong();
+		if (trailer.getInt() != ReplayFormat.INDEX_MAGIC || indexOffset < ReplayFormat.HEADER_SIZE || indexOffset > size - ReplayFormat.TRAILER_SIZE - 8)
+			throw new IOException("The replay file is incomplete");
+		
+		ByteBuffer index = read(channel, indexOffset, (int)Math.min(Integer.MAX_VALUE, size - ReplayFormat.TRAILER_SIZE - indexOffset));
+		turnCount = index.getInt();
+		int keyframeCount = index.getInt();
+		if (turnCount < 1 || keyframeCount < 1 || index.remaining() != 8L * keyframeCount)
+			throw new IOException("The replay index is damaged");
+		keyframeOffsets = new long[keyframeCount];
+		for (int k = 0; k < keyframeCount; ++k)
+		{
+			keyframeOffsets[k] = index.getLong();
+			if (keyframeOffsets[k] >= indexOffset || (k > 0 && keyframeOffsets[k] <= keyframeOffsets[k - 1]))
+				throw new IOException("The replay index is damaged");
+		}
+		recordsEnd = indexOffset;
+		
+		ByteBuffer headerBytes = read(channel, ReplayFormat.HEADER_SIZE, (int)(keyframeOffsets[0] - ReplayFormat.HEADER_SIZE));
+		try
+		{
+			header = ReplayFormat.decodeHeader(new ReplayDecoder(headerBytes), version);
+		}
+		catch (RuntimeException e)
+		{
+			throw new IOException("The replay file is damaged", e);
+		}
+		if ((long)(turnCount - 1) / header.keyframeInterval >= keyframeCount)
+			throw new IOException("The replay index is missing keyframes");
+	}
+	
+	/**
+	 * Opens a replay file for random access, if it is an uncompressed replay with an index.
+	 *
+	 * The file isn't kept open; it is only opened again when a new window has to be mapped.
+	 *
+	 * @param	file	The replay file.
+	 * @return	The opened replay, or null if the file isn't an indexed replay.
+	 * @throws	IOException	If the file could not be read, or its index is damaged.
+	 */
+	static MappedReplay openIfIndexed(File file) throws IOException
+	{
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try
+		{
+			if (channel.size() < ReplayFormat.HEADER_SIZE + ReplayFormat.TRAILER_SIZE)
+				return null;
+			
+			ByteBuffer start = read(channel, 0, ReplayFormat.HEADER_SIZE);
+			int magic = start.getInt();
+			int version = start.get() & 0xFF;
+			int flags = start.get();
+			if (magic != ReplayFormat.MAGIC || (flags & ReplayFormat.FLAG_INDEXED) == 0 || (flags & ReplayFormat.FLAG_DEFLATE) != 0)
+				return null;
+			if (version > ReplayFormat.VERSION)
+				throw new IOException("Replay format version " + version + " is newer than this version of Snaykuu");
+			
+			return new MappedReplay(file, channel, version);
+		}
+		finally
+		{
+			channel.close();
+		}
+	}
+	
+	File getFile()
+	{
+		return file;
+	}
+	
+	ReplayFormat.Header getHeader()
+	{
+		return header;
+	}
+	
+	int getTurnCount()
+	{
+		return turnCount;
+	}
+	
+	/**
+	 * Rebuilds the game as it was at a given turn. The returned frame is reused for
+	 * later calls, so it must not be held on to.
+	 *
+	 * @throws	UncheckedIOException	If the file could not be read or is damaged.
+	 */
+	Frame getFrame(int turn)
+	{
+		if (turn < 0 || turn >= turnCount)
+			throw new IndexOutOfBoundsException("Turn " + turn + " of a replay with " + turnCount + " turns");
+		if (turn == cursorTurn)
+			return cursor;
+		
+		try
+		{
+			int interval = header.keyframeInterval;
+			int keyframe = turn / interval;
+			
+			//~ Keep going from where we are if that's closer than the keyframe.
+			if (cursor == null || cursorTurn > turn || cursorTurn < keyframe * interval)
+			{
+				cursor = null;
+				cursorTurn = -1;
+				cursorOffset = keyframeOffsets[keyframe];
+			}
+			
+			while (cursorTurn < turn)
+				readRecord();
+			return cursor;
+		}
+		catch (IOException e)
+		{
+			cursor = null;
+			cursorTurn = -1;
+			throw new UncheckedIOException("Could not read turn " + turn + " from " + file, e);
+		}
+		catch (RuntimeException e)
+		{
+			cursor = null;
+			cursorTurn = -1;
+			throw new UncheckedIOException(new IOException("The replay file " + file + " is damaged", e));
+		}
+	}
+	
+	private void readRecord() throws IOException
+	{
+		ReplayDecoder decoder = decoderAt(cursorOffset);
+		int tag = decoder.readByte();
+		if (tag == ReplayFormat.RECORD_TICK)
+		{
+			FrameDelta delta = ReplayFormat.decodeTick(decoder, header.width);
+			if (cursor == null)
+				throw new IOException("Tick without a keyframe before it");
+			cursor.apply(delta, header.fruitType);
+			++cursorTurn;
+		}
+		else if (tag == ReplayFormat.RECORD_KEYFRAME)
+		{
+			cursorTurn = decoder.readVarint();
+			cursor = ReplayFormat.decodeFrame(decoder, header);
+		}
+		else
+			throw new IOException("Unexpected record " + tag + " in replay file");
+		
+		cursorOffset = windowStart + decoder.position();
+	}
+	
+	/**
+	 * Gets a decoder positioned at an offset in the file, mapping a new window if the
+	 * current one doesn't hold all the records from there to the next keyframe.
+	 */
+	private ReplayDecoder decoderAt(long offset) throws IOException
+	{
+		int next = Arrays.binarySearch(keyframeOffsets, offset + 1);
+		if (next < 0)
+			next = -next - 1;
+		long blockEnd = next < keyframeOffsets.length ? keyframeOffsets[next] : recordsEnd;
+		
+		if (window == null || offset < windowStart || blockEnd > windowEnd)
+		{
+			//~ Most replays fit in one window, which is then mapped once and for all.
+			long start = recordsEnd - keyframeOffsets[0] <= WINDOW_SIZE ? keyframeOffsets[0] : offset;
+			long end = Math.min(recordsEnd, Math.max(blockEnd, start + WINDOW_SIZE));
+			if (end - start > Integer.MAX_VALUE)
+				throw new IOException("A keyframe interval of the replay is too large to map");
+			
+			FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+			try
+			{
+				window = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+			}
+			finally
+			{
+				channel.close();
+			}
+			windowStart = start;
+			windowEnd = end;
+		}
+		
+		ByteBuffer buffer = window.duplicate();
+		buffer.position((int)(offset - windowStart));
+		return new ReplayDecoder(buffer);
+	}
+	
+	private static ByteBuffer read(FileChannel channel, long offset, int length) throws IOException
+	{
+		if (offset < 0 || length < 0)
+			throw new IOException("The replay file is damaged");
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining())
+			if (channel.read(buffer, offset + buffer.position()) < 0)
+				throw new IOException("The replay file is incomplete");
+		buffer.flip();
+		return buffer;
+	}
+}
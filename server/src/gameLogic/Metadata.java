@@ -1,6 +1,7 @@
 package gameLogic;
 
 import java.io.Serializable;
+import java.util.Random;
 
 /**
  * This class contains all the metadata concerning the current game session.
@@ -8,6 +9,9 @@ import java.io.Serializable;
  * at which snakes grow, the frequency at which fruit spawns and the number 
  * of fruits snakes need to eat to win.
  *
+ * It also holds the seed that all of the session's random choices come from, so
+ * the same metadata and the same decisions by the bots always give the same game.
+ *
  * @author	Sixten Hilborn
  * @author	Arian Jafari
  */
@@ -22,7 +26,17 @@ public class Metadata implements Serializable
 	private int fruitFrequency;
 	private int fruitGoal;
 	
+	private long seed;
+	
+	/**
+	 * Creates metadata for a game with a random seed.
+	 */
 	public Metadata(int boardWidth, int boardHeight, int growthFrequency, int fruitFrequency, int thinkingTime, int fruitGoal)
+	{
+		this(boardWidth, boardHeight, growthFrequency, fruitFrequency, thinkingTime, fruitGoal, new Random().nextLong());
+	}
+	
+	public Metadata(int boardWidth, int boardHeight, int growthFrequency, int fruitFrequency, int thinkingTime, int fruitGoal, long seed)
 	{
 		this.boardWidth = boardWidth;
 		this.boardHeight = boardHeight;
@@ -30,6 +44,7 @@ public class Metadata implements Serializable
 		this.fruitFrequency = fruitFrequency;
 		this.thinkingTime = thinkingTime;
 		this.fruitGoal = fruitGoal;
+		this.seed = seed;
 	}
 	
 	/**
@@ -95,4 +110,15 @@ public class Metadata implements Serializable
 	{
 		return fruitGoal;
 	}
+	
+	/**
+	 * Gets the seed of the game's random choices: where the snakes start and where
+	 * fruit appears.
+	 * 
+	 * @return	The seed of the game.
+	 */
+	public long getSeed()
+	{
+		return seed;
+	}
 }
@@ -0,0 +1,115 @@
+package gameLogic;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * The moves made during a game, which together with the metadata and its seed are all
+ * that is needed to play the game again. Every tick adds the direction of each living
+ * snake, in the order of their ids, as two bits. Nothing else is kept, so the moves of
+ * a long game fit in a few kilobytes.
+ *
+ * @see		Session#replay(Metadata, MoveLog)
+ */
+final class MoveLog implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+	
+	private static final Direction[] DIRECTIONS = Direction.values();
+	
+	//~ The snakes by id, as they were at the start, without their brains.
+	private final Snake[] roster;
+	private byte[] bits = new byte[64];
+	private int bitCount = 0;
+	private int tickCount = 0;
+	
+	MoveLog(Set<Snake> snakes)
+	{
+		int maxId = -1;
+		for (Snake snake : snakes)
+			maxId = Math.max(maxId, snake.getId());
+		
+		roster = new Snake[maxId + 1];
+		for (Snake snake : snakes)
+			roster[snake.getId()] = new Snake(snake);
+	}
+	
+	/**
+	 * Creates a log read back from a file.
+	 */
+	MoveLog(Snake[] roster, byte[] bits, int bitCount, int tickCount)
+	{
+		if (bitCount > 8L * bits.length)
+			throw new IllegalArgumentException("A move log of " + bits.length + " bytes can't hold " + bitCount + " bits");
+		this.roster = roster;
+		this.bits = bits;
+		this.bitCount = bitCount;
+		this.tickCount = tickCount;
+	}
+	
+	/**
+	 * Adds the moves of a tick. The moves of the delta must be in the order of the snakes' ids.
+	 */
+	void record(FrameDelta delta)
+	{
+		for (int i = 0; i < delta.getMoveCount(); ++i)
+		{
+			if ((bitCount >> 3) == bits.length)
+				bits = Arrays.copyOf(bits, 2 * bits.length);
+			bits[bitCount >> 3] |= delta.getMoveDirection(i).ordinal() << (bitCount & 7);
+			bitCount += 2;
+		}
+		++tickCount;
+	}
+	
+	Snake[] getRoster()
+	{
+		return roster;
+	}
+	
+	int getTickCount()
+	{
+		return tickCount;
+	}
+	
+	int getBitCount()
+	{
+		return bitCount;
+	}
+	
+	/**
+	 * Gets the bytes holding the moves. Only the first (getBitCount() + 7) / 8 are in use.
+	 */
+	byte[] getBits()
+	{
+		return bits;
+	}
+	
+	Reader reader()
+	{
+		return new Reader();
+	}
+	
+	/**
+	 * Reads the moves back in the order they were recorded.
+	 */
+	final class Reader
+	{
+		private int position = 0;
+		
+		Direction next()
+		{
+			if (position >= bitCount)
+				throw new IllegalStateException("There are no more moves in the log");
+			int ordinal = bits[position >> 3] >> (position & 7) & 3;
+			position += 2;
+			return DIRECTIONS[ordinal];
+		}
+		
+		boolean hasNext()
+		{
+			return position < bitCount;
+		}
+	}
+}
@@ -14,7 +14,8 @@ import java.util.ArrayList;
 
 public class Position implements Serializable
 {
-	private int x, y;
+	private final int x, y;
+	private final int hash;
 	
 	/**
 	 * Constructs a Position object with the given coordinates.
@@ -26,12 +27,14 @@ public class Position implements Serializable
 	{
 		this.x = x;
 		this.y = y;
+		this.hash = x * 73856093 ^ y * 19349663;
 	}
 	
 	public Position(Position position)
 	{
 		x = position.x;
 		y = position.y;
+		hash = position.hash;
 	}
 	
 	/**
@@ -56,18 +59,32 @@ public class Position implements Serializable
 	
 	/**
 	 * Get a list of all neighbours to this position. One position may
-	 * have up to four neighbours (up, down, left and right).
+	 * have up to four neighbours (up, down, left and right). Note that this
+	 * doesn't know the size of the board, use Board.getNeighbours for a list
+	 * of only the neighbours that are on the board.
 	 * 
 	 * @return A list of neighbour positions.
 	 */
 	public List<Position> getNeighbours()
 	{	
+		return getNeighbours(null);
+	}
+	
+	/**
+	 * Gets the same neighbours as getNeighbours(), using the canonical Positions of a
+	 * board for the ones that are on it.
+	 * 
+	 * @param	table	The table of the board, or null for new Positions.
+	 * @return	A list of neighbour positions.
+	 */
+	List<Position> getNeighbours(PositionTable table)
+	{
 		ArrayList<Position> neighbours = new ArrayList<Position>();
 		
-		neighbours.add(new Position(x, y+1));
-		neighbours.add(new Position(x+1, y));
-		if (y-1 > -1) neighbours.add(new Position(x, y-1));
-		if (x-1 > -1) neighbours.add(new Position(x-1, y));
+		neighbours.add(PositionTable.intern(table, x, y+1));
+		neighbours.add(PositionTable.intern(table, x+1, y));
+		if (y-1 > -1) neighbours.add(PositionTable.intern(table, x, y-1));
+		if (x-1 > -1) neighbours.add(PositionTable.intern(table, x-1, y));
 		return neighbours;
 	}
 	
@@ -85,11 +102,14 @@ public class Position implements Serializable
 	
 	public int hashCode()
 	{
-		return new Integer(x * 13337).hashCode() + new Integer(y * 13337).hashCode();
+		return hash;
 	}
 	
 	public boolean equals(Object other)
 	{
+		if (this == other)
+			return true;
+		
 		if (!(other instanceof Position))
 			return false;
 		
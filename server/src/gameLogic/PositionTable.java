@@ -0,0 +1,139 @@
+package gameLogic;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A table of canonical Position objects for every square of a board of a given size,
+ * together with links from each square to its neighbours. Tables are created once per
+ * board size and shared, so looking up a position or a neighbour never allocates.
+ *
+ * A board hands its table to whatever works on it. Code that has no board to ask, like
+ * the static helpers of Position and Direction, creates new positions instead.
+ *
+ * @see		Board#getPosition(int, int)
+ */
+final class PositionTable
+{
+	private static final Direction[] DIRECTIONS = Direction.values();
+	
+	//~ The tables of the sizes used last. Every board keeps its own table, so a size
+	//~ that drops out of here only costs a new table for the next board of that size.
+	private static final int MAX_TABLES = 8;
+	private static final Map<Long, PositionTable> tables = new LinkedHashMap<Long, PositionTable>(16, 0.75f, true)
+	{
+		protected boolean removeEldestEntry(Map.Entry<Long, PositionTable> eldest)
+		{
+			return size() > MAX_TABLES;
+		}
+	};
+	
+	private final int width, height;
+	private final Position[] positions;
+	
+	//~ For each square, the square in each Direction (by ordinal), or -1 if that's off the board.
+	private final int[] neighbourCells;
+	private final Object[] neighbourLists;
+	
+	private PositionTable(int width, int height)
+	{
+		this.width = width;
+		this.height = height;
+		positions = new Position[width * height];
+		neighbourCells = new int[width * height * DIRECTIONS.length];
+		neighbourLists = new Object[width * height];
+		
+		for (int y = 0; y < height; ++y)
+		{
+			for (int x = 0; x < width; ++x)
+			{
+				int cell = y * width + x;
+				positions[cell] = new Position(x, y);
+				for (Direction dir : DIRECTIONS)
+				{
+					Position v = dir.getDirectionVector();
+					int nx = x + v.getX(), ny = y + v.getY();
+					boolean onBoard = nx >= 0 && nx < width && ny >= 0 && ny < height;
+					neighbourCells[cell * DIRECTIONS.length + dir.ordinal()] = onBoard ? ny * width + nx : -1;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Gets the shared table for boards of the given size.
+	 */
+	static synchronized PositionTable forSize(int width, int height)
+	{
+		Long key = ((long)width << 32) | height;
+		PositionTable table = tables.get(key);
+		if (table == null)
+		{
+			table = new PositionTable(width, height);
+			tables.put(key, table);
+		}
+		return table;
+	}
+	
+	/**
+	 * Gets a Position equal to (x, y), using the canonical object if the coordinates
+	 * are on the board of a table, and a new object otherwise.
+	 * 
+	 * @param	table	The table of the board, or null if there is no board to go by.
+	 */
+	static Position intern(PositionTable table, int x, int y)
+	{
+		if (table != null && x >= 0 && x < table.width && y >= 0 && y < table.height)
+			return table.positions[y * table.width + x];
+		return new Position(x, y);
+	}
+	
+	Position get(int cell)
+	{
+		return positions[cell];
+	}
+	
+	Position get(int x, int y)
+	{
+		if (x < 0 || x >= width || y < 0 || y >= height)
+			throw new ArrayIndexOutOfBoundsException("Position {x: " + x + " y: " + y + "} is outside the board");
+		return positions[y * width + x];
+	}
+	
+	/**
+	 * Gets the neighbour of a square in a given direction, or null if that neighbour
+	 * is outside the board.
+	 */
+	Position getNeighbour(int cell, Direction dir)
+	{
+		int neighbour = neighbourCells[cell * DIRECTIONS.length + dir.ordinal()];
+		return neighbour < 0 ? null : positions[neighbour];
+	}
+	
+	/**
+	 * Gets all neighbours of a square that are on the board, as an unmodifiable list
+	 * that is built once and then reused.
+	 */
+	@SuppressWarnings("unchecked")
+	List<Position> getNeighbours(int cell)
+	{
+		List<Position> neighbours = (List<Position>)neighbourLists[cell];
+		if (neighbours == null)
+		{
+			Position[] found = new Position[DIRECTIONS.length];
+			int count = 0;
+			for (Direction dir : DIRECTIONS)
+			{
+				Position neighbour = getNeighbour(cell, dir);
+				if (neighbour != null)
+					found[count++] = neighbour;
+			}
+			neighbours = Collections.unmodifiableList(Arrays.asList(Arrays.copyOf(found, count)));
+			neighbourLists[cell] = neighbours;
+		}
+		return neighbours;
+	}
+}
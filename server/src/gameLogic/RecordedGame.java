@@ -1,39 +1,192 @@
 package gameLogic;
 
 import java.io.*;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.Set;
 
+/**
+ * A recording of a game that can be replayed turn by turn. Instead of a full copy of the
+ * game for every turn, it keeps what changed during each tick, plus a full keyframe every
+ * KEYFRAME_INTERVAL turns. Any turn is rebuilt by copying the closest keyframe before it
+ * and applying the changes since then.
+ *
+ * A recording can also be kept in an uncompressed replay file instead of in memory, either
+ * because it was streamed there during the game or because it was loaded from one. Turns
+ * are then read from the memory mapped file when they are asked for.
+ *
+ * A game that is recorded as it is played also keeps a MoveLog, so it can be saved as
+ * just its moves with {@link #saveMovesToFile(File)}.
+ *
+ * @see		MappedReplay
+ */
 public class RecordedGame implements Game, Serializable
 {
+	static final int KEYFRAME_INTERVAL = 64;
+	
 	private Metadata metadata;
-	private LinkedList<Frame> frames = new LinkedList<Frame>();
+	private GameObjectType fruitType;
+	private int keyframeInterval = KEYFRAME_INTERVAL;
+	private ArrayList<Frame> keyframes = new ArrayList<Frame>();
+	//~ deltas.get(t) leads from turn t to turn t + 1. It may be null when turn t + 1 has
+	//~ a keyframe of its own, which is the case for replays converted from the old format.
+	private ArrayList<FrameDelta> deltas = new ArrayList<FrameDelta>();
 	private int currentFrameIndex = 0;
+	private MoveLog moveLog = null;
+	
+	//~ A recording that is streamed to a file is only kept there. The file is mapped the
+	//~ first time a turn is asked for after it has been finished.
+	private transient ReplayWriter writer = null;
+	private File replayFile = null;
+	private transient MappedReplay mappedReplay = null;
+	private int streamedTurnCount = 0;
+	
+	//~ The most recently rebuilt turn, so stepping through a replay only applies one delta per step.
+	private transient Frame cursor = null;
+	private transient int cursorIndex = -1;
 	
 	public RecordedGame(Metadata metadata)
 	{
 		this.metadata = metadata;
 	}
 	
-	public RecordedGame(Metadata metadata, Board startBoard, Set<Snake> snakes)
+	public RecordedGame(Metadata metadata, Board startBoard, Set<Snake> snakes, GameObjectType fruitType)
 	{
 		this.metadata = metadata;
-		this.frames.addFirst(new Frame(startBoard, snakes));
+		this.fruitType = fruitType;
+		this.keyframes.add(new Frame(startBoard, snakes));
+		this.moveLog = new MoveLog(snakes);
+	}
+	
+	private RecordedGame(MappedReplay mappedReplay)
+	{
+		ReplayFormat.Header header = mappedReplay.getHeader();
+		this.metadata = header.metadata;
+		this.fruitType = header.fruitType;
+		this.keyframeInterval = header.keyframeInterval;
+		this.mappedReplay = mappedReplay;
+		this.replayFile = mappedReplay.getFile();
+	}
+	
+	/**
+	 * Creates an empty recording to be filled in by a replay reader.
+	 */
+	RecordedGame(Metadata metadata, GameObjectType fruitType, int keyframeInterval)
+	{
+		if (keyframeInterval < 1)
+			throw new IllegalArgumentException("Keyframe interval must be greater than 0");
+		this.metadata = metadata;
+		this.fruitType = fruitType;
+		this.keyframeInterval = keyframeInterval;
+	}
+	
+	public synchronized int getTurnCount()
+	{
+		if (writer != null)
+			return writer.getTurnCount();
+		if (mappedReplay != null)
+			return mappedReplay.getTurnCount();
+		if (keyframes.isEmpty())
+			return streamedTurnCount;
+		return deltas.size() + 1;
+	}
+	
+	/**
+	 * Starts writing this recording to a file as the game is played, instead of keeping
+	 * it in memory. Only a recording that has no ticks yet can be streamed. The file is
+	 * complete once {@link #finishRecording()} has been called.
+	 *
+	 * @param	file	The replay file, which is replaced if it exists.
+	 * @throws	IOException	If the file could not be created.
+	 */
+	synchronized void streamTo(File file) throws IOException
+	{
+		if (writer != null || keyframes.size() != 1 || !deltas.isEmpty())
+			throw new IllegalStateException("Only a recording that has not started can be streamed");
+		
+		ReplayWriter newWriter = ReplayWriter.create(file, false);
+		try
+		{
+			Frame start = keyframes.get(0);
+			newWriter.writeStart(metadata, start.getBoard(), start.getSnakes(), fruitType, keyframeInterval);
+		}
+		catch (IOException e)
+		{
+			newWriter.close();
+			throw e;
+		}
+		writer = newWriter;
+		replayFile = file;
+		keyframes.clear();
+	}
+	
+	/**
+	 * Ends a recording that is streamed to a file, writing what remains. Does nothing
+	 * for recordings kept in memory.
+	 *
+	 * @throws	IOException	If the end of the replay could not be written.
+	 */
+	synchronized void finishRecording() throws IOException
+	{
+		if (writer == null)
+			return;
+		
+		try
+		{
+			streamedTurnCount = writer.getTurnCount();
+			writer.finish();
+		}
+		finally
+		{
+			writer.close();
+			writer = null;
+		}
+	}
+	
+	/**
+	 * Records a tick. The board and snakes are only copied when the new turn
+	 * is due for a keyframe.
+	 *
+	 * @param	delta	What changed during the tick.
+	 * @param	board	The board after the tick.
+	 * @param	snakes	The snakes after the tick.
+	 */
+	synchronized void recordTick(FrameDelta delta, Board board, Set<Snake> snakes) throws IOException
+	{
+		if (moveLog != null)
+			moveLog.record(delta);
+		
+		if (writer != null)
+		{
+			writer.writeTick(delta);
+			int turn = writer.getTurnCount() - 1;
+			if (turn % keyframeInterval == 0)
+				writer.writeKeyframe(turn, board, snakes);
+			return;
+		}
+		
+		delta.trim();
+		deltas.add(delta);
+		if (deltas.size() % keyframeInterval == 0)
+			keyframes.add(new Frame(board, snakes));
 	}
 	
-	public int getTurnCount()
+	synchronized void addDelta(FrameDelta delta)
 	{
-		return frames.size();
+		deltas.add(delta);
 	}
 	
-	public void addFrame(Frame frame)
+	/**
+	 * Adds a keyframe read back from a file. The frame must be for the turn that
+	 * is due for the next keyframe.
+	 */
+	synchronized void addKeyframe(Frame frame)
 	{
-		frames.addLast(frame);
+		keyframes.add(frame);
 	}
 	
-	public GameState getCurrentState()
+	public synchronized GameState getCurrentState()
 	{
-		Frame currentFrame = frames.get(currentFrameIndex);
+		Frame currentFrame = getFrame(currentFrameIndex);
 		
 		return new GameState(currentFrame.getBoard(), currentFrame.getSnakes(), metadata, ErrorState.NO_ERROR);
 	}
@@ -43,18 +196,18 @@ public class RecordedGame implements Game, Serializable
 		return metadata;
 	}
 	
-	public GameResult getGameResult()
+	public synchronized GameResult getGameResult()
 	{
-		Frame currentFrame = frames.get(currentFrameIndex);
-		return new GameResult(currentFrame.getSnakes(), metadata, this);
+		Frame currentFrame = getFrame(currentFrameIndex);
+		return new GameResult(new Frame(currentFrame).getSnakes(), metadata, this);
 	}
 	
-	public int getCurrentReplayFrame()
+	public synchronized int getCurrentReplayFrame()
 	{
 		return currentFrameIndex;
 	}
 	
-	public void setCurrentReplayFrame(int index)
+	public synchronized void setCurrentReplayFrame(int index)
 	{
 		if (index < 0)
 			index = 0;
@@ -64,20 +217,185 @@ public class RecordedGame implements Game, Serializable
 		currentFrameIndex = index;
 	}
 	
+	/**
+	 * Rebuilds the game as it was at a given turn. The returned frame is reused for
+	 * later calls, so it must not be held on to.
+	 */
+	private Frame getFrame(int index)
+	{
+		MappedReplay mapped = getMappedReplay();
+		if (mapped != null)
+			return mapped.getFrame(index);
+		
+		if (index == cursorIndex)
+			return cursor;
+		int keyframeIndex = index / keyframeInterval;
+		
+		//~ Keep going from where we are if that's closer than the keyframe.
+		if (cursor == null || cursorIndex > index || cursorIndex < keyframeIndex * keyframeInterval)
+		{
+			cursor = new Frame(keyframes.get(keyframeIndex));
+			cursorIndex = keyframeIndex * keyframeInterval;
+		}
+		
+		while (cursorIndex < index)
+			cursor.apply(deltas.get(cursorIndex++), fruitType);
+		
+		return cursor;
+	}
+	
+	/**
+	 * Saves this game in the compressed replay format.
+	 *
+	 * @param	file	The file to write.
+	 * @throws	IOException	If the file could not be written.
+	 */
 	public void saveToFile(File file) throws IOException
 	{
-		FileOutputStream fileStream = new FileOutputStream(file);
-		ObjectOutputStream objectStream = new ObjectOutputStream(fileStream);
-		objectStream.writeObject(this);
-		objectStream.close();
+		saveToFile(file, true);
+	}
+	
+	/**
+	 * Saves this game in the replay format.
+	 *
+	 * @param	file		The file to write.
+	 * @param	compress	Whether the turns should be deflated.
+	 * @throws	IOException	If the file could not be written.
+	 * @see		ReplayFormat
+	 */
+	public synchronized void saveToFile(File file, boolean compress) throws IOException
+	{
+		loadReplayFile();
+		if (keyframes.isEmpty())
+			throw new IOException("There is nothing to save before the game has started");
+		
+		ReplayWriter out = ReplayWriter.create(file, compress);
+		try
+		{
+			Frame start = keyframes.get(0);
+			out.writeStart(metadata, start.getBoard(), start.getSnakes(), fruitType, keyframeInterval);
+			for (int turn = 1; turn < getTurnCount(); ++turn)
+			{
+				FrameDelta delta = deltas.get(turn - 1);
+				if (delta != null)
+					out.writeTick(delta);
+				if (turn % keyframeInterval == 0)
+				{
+					Frame keyframe = keyframes.get(turn / keyframeInterval);
+					out.writeKeyframe(turn, keyframe.getBoard(), keyframe.getSnakes());
+				}
+			}
+			out.finish();
+		}
+		finally
+		{
+			out.close();
+		}
 	}
 	
+	/**
+	 * Saves only the seed and the moves of this game, which is far smaller than a full
+	 * replay. Loading the file plays the game again from the moves, so it only gives back
+	 * the same game in versions of Snaykuu with the same rules.
+	 *
+	 * @param	file	The file to write.
+	 * @throws	IOException	If the file could not be written, or this game wasn't
+	 *						recorded as it was played, so its moves aren't known.
+	 */
+	public synchronized void saveMovesToFile(File file) throws IOException
+	{
+		if (moveLog == null)
+			throw new IOException("Only the moves of a game recorded as it was played can be saved");
+		
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+		try
+		{
+			ReplayFormat.writeMoves(out, metadata, moveLog);
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+	
+	/**
+	 * Maps the replay file of a recording kept in a file, unless it is already mapped
+	 * or the recording has been read into memory.
+	 *
+	 * @return	The mapped replay file, or null if the recording is in memory.
+	 */
+	private MappedReplay getMappedReplay()
+	{
+		if (mappedReplay != null || replayFile == null || !keyframes.isEmpty())
+			return mappedReplay;
+		if (writer != null)
+			throw new IllegalStateException("The replay is still being written");
+		
+		try
+		{
+			mappedReplay = MappedReplay.openIfIndexed(replayFile);
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException("Could not open the replay " + replayFile, e);
+		}
+		if (mappedReplay == null)
+			throw new UncheckedIOException(new IOException(replayFile + " is not an indexed replay"));
+		return mappedReplay;
+	}
+	
+	/**
+	 * Reads all of a recording kept in a file into memory. After this the file can be
+	 * overwritten.
+	 */
+	private void loadReplayFile() throws IOException
+	{
+		if (replayFile == null || !keyframes.isEmpty())
+			return;
+		if (writer != null)
+			throw new IllegalStateException("The replay is still being written");
+		
+		RecordedGame saved;
+		InputStream in = new BufferedInputStream(new FileInputStream(replayFile), 1 << 16);
+		try
+		{
+			saved = ReplayFormat.read(in);
+		}
+		finally
+		{
+			in.close();
+		}
+		keyframes = saved.keyframes;
+		deltas = saved.deltas;
+		mappedReplay = null;
+	}
+	
+	/**
+	 * Loads a game saved by {@link #saveToFile(File)}. Uncompressed replays are memory mapped
+	 * rather than read, so they open at once whatever their size. Replays saved by older
+	 * versions, which were serialized Java objects, can still be loaded.
+	 *
+	 * @param	file	The replay file.
+	 * @return	The recorded game.
+	 * @throws	IOException	If the file could not be read or is not a replay.
+	 * @throws	ClassNotFoundException	If an old replay refers to a class that doesn't exist.
+	 */
 	public static RecordedGame loadFromFile(File file) throws IOException, ClassNotFoundException
 	{
-		FileInputStream fileStream = new FileInputStream(file);;
-		ObjectInputStream objectStream = new ObjectInputStream(fileStream);
-		RecordedGame recordedGame = (RecordedGame)objectStream.readObject();
-		objectStream.close();
-		return recordedGame;
+		MappedReplay mapped = MappedReplay.openIfIndexed(file);
+		if (mapped != null)
+			return new RecordedGame(mapped);
+		
+		InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+		try
+		{
+			if (ReplayFormat.isReplay(in))
+				return ReplayFormat.read(in);
+			return LegacyReplayReader.read(in);
+		}
+		finally
+		{
+			in.close();
+		}
 	}
 }
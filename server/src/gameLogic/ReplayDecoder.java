@@ -0,0 +1,78 @@
+package gameLogic;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the primitive encodings written by {@link ReplayEncoder} from a buffer.
+ * Running past the end of the buffer throws a BufferUnderflowException.
+ */
+final class ReplayDecoder
+{
+	private final ByteBuffer buffer;
+	
+	ReplayDecoder(ByteBuffer buffer)
+	{
+		this.buffer = buffer;
+	}
+	
+	int readByte()
+	{
+		return buffer.get() & 0xFF;
+	}
+	
+	int readInt()
+	{
+		return buffer.getInt();
+	}
+	
+	long readLong()
+	{
+		return buffer.getLong();
+	}
+	
+	int readVarint()
+	{
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7)
+		{
+			int b = buffer.get();
+			value |= (b & 0x7F) << shift;
+			if (b >= 0)
+				return value;
+		}
+		throw new IllegalArgumentException("Malformed varint");
+	}
+	
+	int readSignedVarint()
+	{
+		int value = readVarint();
+		return (value >>> 1) ^ -(value & 1);
+	}
+	
+	byte[] readBytes(int length)
+	{
+		if (length > buffer.remaining())
+			throw new BufferUnderflowException();
+		byte[] values = new byte[length];
+		buffer.get(values);
+		return values;
+	}
+	
+	String readString()
+	{
+		byte[] encoded = new byte[readVarint()];
+		buffer.get(encoded);
+		return new String(encoded, ReplayEncoder.UTF8);
+	}
+	
+	int position()
+	{
+		return buffer.position();
+	}
+	
+	boolean hasRemaining()
+	{
+		return buffer.hasRemaining();
+	}
+}
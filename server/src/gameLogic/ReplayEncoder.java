@@ -0,0 +1,109 @@
+package gameLogic;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * A growable byte buffer with the primitive encodings used by the replay format.
+ * Counts, ids and squares are written as unsigned varints (seven bits per byte,
+ * lowest bits first), values that may be negative are zigzag encoded first.
+ *
+ * @see		ReplayDecoder
+ */
+final class ReplayEncoder
+{
+	static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	private byte[] bytes;
+	private int size = 0;
+	
+	ReplayEncoder(int capacity)
+	{
+		bytes = new byte[Math.max(16, capacity)];
+	}
+	
+	void writeByte(int value)
+	{
+		ensureCapacity(1);
+		bytes[size++] = (byte)value;
+	}
+	
+	void writeInt(int value)
+	{
+		ensureCapacity(4);
+		bytes[size++] = (byte)(value >>> 24);
+		bytes[size++] = (byte)(value >>> 16);
+		bytes[size++] = (byte)(value >>> 8);
+		bytes[size++] = (byte)value;
+	}
+	
+	void writeLong(long value)
+	{
+		writeInt((int)(value >>> 32));
+		writeInt((int)value);
+	}
+	
+	void writeVarint(int value)
+	{
+		ensureCapacity(5);
+		while ((value & ~0x7F) != 0)
+		{
+			bytes[size++] = (byte)((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		bytes[size++] = (byte)value;
+	}
+	
+	void writeSignedVarint(int value)
+	{
+		writeVarint((value << 1) ^ (value >> 31));
+	}
+	
+	void writeString(String value)
+	{
+		byte[] encoded = value.getBytes(UTF8);
+		writeVarint(encoded.length);
+		ensureCapacity(encoded.length);
+		System.arraycopy(encoded, 0, bytes, size, encoded.length);
+		size += encoded.length;
+	}
+	
+	void writeBytes(byte[] values, int length)
+	{
+		ensureCapacity(length);
+		System.arraycopy(values, 0, bytes, size, length);
+		size += length;
+	}
+	
+	int size()
+	{
+		return size;
+	}
+	
+	void reset()
+	{
+		size = 0;
+	}
+	
+	void writeTo(OutputStream out) throws IOException
+	{
+		out.write(bytes, 0, size);
+	}
+	
+	void writeTo(WritableByteChannel channel) throws IOException
+	{
+		ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, size);
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+	}
+	
+	private void ensureCapacity(int extra)
+	{
+		if (size + extra > bytes.length)
+			bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+	}
+}
@@ -0,0 +1,550 @@
+package gameLogic;
+
+import java.awt.Color;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The binary replay format. A replay starts with a fixed header of six bytes: the magic
+ * number, the format version and a byte of flags. If FLAG_DEFLATE is set, everything after
+ * the header is a deflate stream. Otherwise FLAG_INDEXED is set, and the replay ends with
+ * an index of its keyframes. What follows the header is
+ *
+ * <ul>
+ *	<li>the metadata, the board size and the keyframe interval. Since version 2 the
+ *		metadata ends with the seed of the game,</li>
+ *	<li>the object types of walls and fruit,</li>
+ *	<li>the roster, with the id, name, colour and type of every snake,</li>
+ *	<li>a sequence of records that each start with a tag byte. RECORD_KEYFRAME holds a full
+ *		copy of the board and the snakes, RECORD_TICK holds what changed during one tick, and
+ *		RECORD_END holds the number of turns and ends the replay.</li>
+ * </ul>
+ *
+ * If FLAG_MOVES is set the replay is a move log instead, which only holds the metadata,
+ * the roster, the number of ticks and the moves of every tick packed two bits to a move.
+ * It is read by playing the game again. See {@link MoveLog}.
+ *
+ * Numbers are varints as written by {@link ReplayEncoder}, and squares are numbered row by row.
+ *
+ * @see		RecordedGame
+ */
+final class ReplayFormat
+{
+	static final int MAGIC = 0x53525042;	//~ "SRPB"
+	static final int VERSION = 2;
+	static final int HEADER_SIZE = 6;
+	
+	static final int FLAG_DEFLATE = 1;
+	static final int FLAG_INDEXED = 2;
+	static final int FLAG_MOVES = 4;
+	
+	//~ An indexed replay ends with an index holding the number of turns, the number of
+	//~ keyframes and the offset of each keyframe record, all as fixed size numbers, and
+	//~ a trailer holding the offset of the index and INDEX_MAGIC.
+	static final int INDEX_MAGIC = 0x53525049;	//~ "SRPI"
+	static final int TRAILER_SIZE = 12;
+	
+	static final int RECORD_END = 0;
+	static final int RECORD_TICK = 1;
+	static final int RECORD_KEYFRAME = 2;
+	
+	private static final int TICK_GROWTH = 1;
+	private static final int TICK_FRUIT_SPAWNED = 2;
+	
+	private static final int TYPE_PRESENT = 1;
+	private static final int TYPE_LETHAL = 2;
+	
+	private static final Direction[] DIRECTIONS = Direction.values();
+	
+	private ReplayFormat()
+	{
+	}
+	
+	/**
+	 * Checks whether a stream starts with the replay header, without consuming anything.
+	 * The stream must support mark and reset.
+	 */
+	static boolean isReplay(InputStream in) throws IOException
+	{
+		in.mark(4);
+		int magic = 0;
+		int read = 0;
+		for (int b; read < 4 && (b = in.read()) >= 0; ++read)
+			magic = magic << 8 | b;
+		in.reset();
+		
+		return read == 4 && magic == MAGIC;
+	}
+	
+	/**
+	 * Reads a whole replay from a stream positioned at its header.
+	 *
+	 * @throws	IOException	If the stream could not be read, or isn't a replay this version understands.
+	 */
+	static RecordedGame read(InputStream in) throws IOException
+	{
+		DataInputStream header = new DataInputStream(in);
+		if (header.readInt() != MAGIC)
+			throw new IOException("Not a replay file");
+		int version = header.readUnsignedByte();
+		if (version > VERSION)
+			throw new IOException("Replay format version " + version + " is newer than this version of Snaykuu");
+		int flags = header.readUnsignedByte();
+		
+		Inflater inflater = null;
+		if ((flags & FLAG_DEFLATE) != 0)
+		{
+			inflater = new Inflater();
+			in = new InflaterInputStream(in, inflater, 1 << 16);
+		}
+		
+		try
+		{
+			ReplayDecoder decoder = new ReplayDecoder(ByteBuffer.wrap(readFully(in)));
+			if ((flags & FLAG_MOVES) != 0)
+				return Session.replay(decodeMetadata(decoder, version), decodeMoves(decoder));
+			return decodeGame(decoder, version);
+		}
+		catch (RuntimeException e)
+		{
+			throw new IOException("The replay file is damaged", e);
+		}
+		finally
+		{
+			if (inflater != null)
+				inflater.end();
+		}
+	}
+	
+	/**
+	 * Writes a move log replay, which is always deflated.
+	 */
+	static void writeMoves(OutputStream out, Metadata metadata, MoveLog moves) throws IOException
+	{
+		ReplayEncoder encoder = new ReplayEncoder(64 + moves.getBitCount() / 8);
+		encoder.writeInt(MAGIC);
+		encoder.writeByte(VERSION);
+		encoder.writeByte(FLAG_MOVES | FLAG_DEFLATE);
+		encoder.writeTo(out);
+		encoder.reset();
+		
+		encodeMetadata(encoder, metadata);
+		encodeRoster(encoder, Arrays.asList(moves.getRoster()));
+		encoder.writeVarint(moves.getTickCount());
+		encoder.writeVarint(moves.getBitCount());
+		encoder.writeBytes(moves.getBits(), (moves.getBitCount() + 7) / 8);
+		
+		Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+		try
+		{
+			DeflaterOutputStream deflaterStream = new DeflaterOutputStream(out, deflater);
+			encoder.writeTo(deflaterStream);
+			deflaterStream.finish();
+		}
+		finally
+		{
+			deflater.end();
+		}
+	}
+	
+	private static MoveLog decodeMoves(ReplayDecoder decoder)
+	{
+		Snake[] roster = decodeRoster(decoder);
+		for (int id = 0; id < roster.length; ++id)
+			if (roster[id] == null)
+				throw new IllegalArgumentException("Snake " + id + " is missing from the roster");
+		
+		int tickCount = decoder.readVarint();
+		int bitCount = decoder.readVarint();
+		byte[] bits = decoder.readBytes((bitCount + 7) / 8);
+		return new MoveLog(roster, bits, bitCount, tickCount);
+	}
+	
+	private static byte[] readFully(InputStream in) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 16);
+		byte[] chunk = new byte[1 << 16];
+		for (int read; (read = in.read(chunk)) > 0; )
+			bytes.write(chunk, 0, read);
+		return bytes.toByteArray();
+	}
+	
+	/**
+	 * What comes before the first record: everything needed to decode the records.
+	 */
+	static final class Header
+	{
+		Metadata metadata;
+		int width, height;
+		int keyframeInterval;
+		GameObjectType wallType, fruitType;
+		Snake[] roster;
+	}
+	
+	static Header decodeHeader(ReplayDecoder decoder, int version)
+	{
+		Header header = new Header();
+		header.metadata = decodeMetadata(decoder, version);
+		header.width = decoder.readVarint();
+		header.height = decoder.readVarint();
+		header.keyframeInterval = decoder.readVarint();
+		header.wallType = decodeType(decoder);
+		header.fruitType = decodeType(decoder);
+		header.roster = decodeRoster(decoder);
+		if (header.keyframeInterval < 1)
+			throw new IllegalArgumentException("Keyframe interval must be greater than 0");
+		return header;
+	}
+	
+	private static RecordedGame decodeGame(ReplayDecoder decoder, int version) throws IOException
+	{
+		Header header = decodeHeader(decoder, version);
+		int interval = header.keyframeInterval;
+		
+		RecordedGame game = new RecordedGame(header.metadata, header.fruitType, interval);
+		int keyframes = 0;
+		int turn = 0;
+		while (true)
+		{
+			int tag = decoder.readByte();
+			if (tag == RECORD_TICK)
+			{
+				game.addDelta(decodeTick(decoder, header.width));
+				++turn;
+			}
+			else if (tag == RECORD_KEYFRAME)
+			{
+				int keyframeTurn = decoder.readVarint();
+				if (keyframeTurn != keyframes * interval || keyframeTurn < turn || keyframeTurn > turn + 1)
+					throw new IOException("Keyframe for turn " + keyframeTurn + " is out of place");
+				
+				//~ A keyframe without a tick before it replaces the tick.
+				if (keyframeTurn > turn)
+				{
+					game.addDelta(null);
+					++turn;
+				}
+				game.addKeyframe(decodeFrame(decoder, header));
+				++keyframes;
+			}
+			else if (tag == RECORD_END)
+			{
+				int turnCount = decoder.readVarint();
+				if (keyframes == 0 || turnCount != turn + 1)
+					throw new IOException("The replay file is incomplete");
+				return game;
+			}
+			else
+				throw new IOException("Unknown record " + tag + " in replay file");
+		}
+	}
+	
+	static void encodeGame(ReplayEncoder encoder, Metadata metadata, Board board, GameObjectType fruitType, int interval, Set<Snake> snakes)
+	{
+		encodeMetadata(encoder, metadata);
+		encoder.writeVarint(board.getWidth());
+		encoder.writeVarint(board.getHeight());
+		encoder.writeVarint(interval);
+		encodeType(encoder, board.getWallType());
+		encodeType(encoder, fruitType != null ? fruitType : board.getFruitType());
+		
+		encodeRoster(encoder, snakes);
+	}
+	
+	private static void encodeRoster(ReplayEncoder encoder, Collection<Snake> snakes)
+	{
+		encoder.writeVarint(snakes.size());
+		for (Snake snake : snakes)
+		{
+			encoder.writeVarint(snake.getId());
+			encoder.writeString(snake.getName());
+			encoder.writeInt(snake.getColor().getRGB());
+			encodeType(encoder, snake.getType());
+		}
+	}
+	
+	private static Snake[] decodeRoster(ReplayDecoder decoder)
+	{
+		int count = decoder.readVarint();
+		Snake[] snakes = new Snake[count];
+		for (int i = 0; i < count; ++i)
+		{
+			int id = decoder.readVarint();
+			String name = decoder.readString();
+			Color color = new Color(decoder.readInt(), true);
+			Snake snake = new Snake(decodeType(decoder), name, null, color);
+			snake.setId(id);
+			
+			if (id >= snakes.length)
+				snakes = Arrays.copyOf(snakes, id + 1);
+			snakes[id] = snake;
+		}
+		return snakes;
+	}
+	
+	private static void encodeMetadata(ReplayEncoder encoder, Metadata metadata)
+	{
+		encoder.writeVarint(metadata.getBoardWidth());
+		encoder.writeVarint(metadata.getBoardHeight());
+		encoder.writeVarint(metadata.getGrowthFrequency());
+		encoder.writeVarint(metadata.getFruitFrequency());
+		encoder.writeVarint(metadata.getMaximumThinkingTime());
+		encoder.writeVarint(metadata.getFruitGoal());
+		encoder.writeLong(metadata.getSeed());
+	}
+	
+	//~ Replays from before version 2 didn't record the seed, and get seed 0.
+	private static Metadata decodeMetadata(ReplayDecoder decoder, int version)
+	{
+		int boardWidth = decoder.readVarint();
+		int boardHeight = decoder.readVarint();
+		int growthFrequency = decoder.readVarint();
+		int fruitFrequency = decoder.readVarint();
+		int thinkingTime = decoder.readVarint();
+		int fruitGoal = decoder.readVarint();
+		long seed = version >= 2 ? decoder.readLong() : 0;
+		return new Metadata(boardWidth, boardHeight, growthFrequency, fruitFrequency, thinkingTime, fruitGoal, seed);
+	}
+	
+	private static void encodeType(ReplayEncoder encoder, GameObjectType type)
+	{
+		if (type == null)
+		{
+			encoder.writeByte(0);
+			return;
+		}
+		encoder.writeByte(TYPE_PRESENT | (type.isLethal() ? TYPE_LETHAL : 0));
+		encoder.writeString(type.getName());
+		encoder.writeSignedVarint(type.getValue());
+	}
+	
+	private static GameObjectType decodeType(ReplayDecoder decoder)
+	{
+		int flags = decoder.readByte();
+		if ((flags & TYPE_PRESENT) == 0)
+			return null;
+		String name = decoder.readString();
+		return new GameObjectType(name, (flags & TYPE_LETHAL) != 0, decoder.readSignedVarint());
+	}
+	
+	static void encodeKeyframe(ReplayEncoder encoder, int turn, Board board, Set<Snake> snakes)
+	{
+		encoder.writeByte(RECORD_KEYFRAME);
+		encoder.writeVarint(turn);
+		
+		int cells = board.getWidth() * board.getHeight();
+		
+		int walls = 0, fruits = 0, snakeCells = 0;
+		for (int cell = 0; cell < cells; ++cell)
+		{
+			if (board.hasWall(cell))
+				++walls;
+			if (board.hasFruit(cell))
+				++fruits;
+			if (board.hasSnake(cell))
+				++snakeCells;
+		}
+		
+		//~ Each set of squares is written as the gaps between them.
+		encoder.writeVarint(walls);
+		for (int cell = 0, last = -1; cell < cells; ++cell)
+			if (board.hasWall(cell))
+			{
+				encoder.writeVarint(cell - last - 1);
+				last = cell;
+			}
+		encoder.writeVarint(fruits);
+		for (int cell = 0, last = -1; cell < cells; ++cell)
+			if (board.hasFruit(cell))
+			{
+				encoder.writeVarint(cell - last - 1);
+				last = cell;
+			}
+		
+		encoder.writeVarint(snakes.size());
+		for (Snake snake : snakes)
+		{
+			encoder.writeVarint(snake.getId());
+			encoder.writeSignedVarint(snake.getScore());
+			encoder.writeVarint(snake.getLifespan());
+			encoder.writeByte(snake.isDead() ? 1 : 0);
+			
+			//~ Segments are usually next to each other, so after the head only the
+			//~ difference to the previous segment is written.
+			int length = snake.getLength();
+			encoder.writeVarint(length);
+			int previous = 0;
+			for (int i = 0; i < length; ++i)
+			{
+				int cell = board.cellOf(snake.getSegmentX(i), snake.getSegmentY(i));
+				encoder.writeSignedVarint(cell - previous);
+				previous = cell;
+			}
+			for (int i = 0; i < length; i += 4)
+			{
+				int packed = 0;
+				for (int j = i; j < i + 4 && j < length; ++j)
+					packed |= snake.getSegmentDirection(j).ordinal() << (2 * (j - i));
+				encoder.writeByte(packed);
+			}
+		}
+		
+		//~ The board keeps its own record of which snakes are in which squares.
+		encoder.writeVarint(snakeCells);
+		for (int cell = 0, last = -1; cell < cells; ++cell)
+			if (board.hasSnake(cell))
+			{
+				encoder.writeVarint(cell - last - 1);
+				last = cell;
+				
+				ArrayList<Snake> inSquare = board.getSnakes(cell);
+				encoder.writeVarint(inSquare.size());
+				for (Snake snake : inSquare)
+					encoder.writeVarint(snake.getId());
+			}
+	}
+	
+	/**
+	 * Decodes a keyframe whose tag and turn have already been read.
+	 */
+	static Frame decodeFrame(ReplayDecoder decoder, Header header)
+	{
+		int width = header.width;
+		Snake[] roster = header.roster;
+		Board board = new Board(width, header.height);
+		
+		GameObject wall = new GameObject(header.wallType);
+		for (int n = decoder.readVarint(), cell = -1; n > 0; --n)
+		{
+			cell += decoder.readVarint() + 1;
+			board.addGameObject(wall, cell);
+		}
+		GameObject fruit = new GameObject(header.fruitType);
+		for (int n = decoder.readVarint(), cell = -1; n > 0; --n)
+		{
+			cell += decoder.readVarint() + 1;
+			board.addGameObject(fruit, cell);
+		}
+		
+		Snake[] snakesById = new Snake[roster.length];
+		//~ Which segment of a snake, nearest the head, is in a square, by id << 32 | cell,
+		//~ so that putting the snakes on the board doesn't have to look for them.
+		HashMap<Long, Integer> segments = new HashMap<Long, Integer>();
+		for (int n = decoder.readVarint(); n > 0; --n)
+		{
+			Snake member = roster[decoder.readVarint()];
+			Snake snake = new Snake(member.getType(), member.getName(), null, member.getColor());
+			snake.setId(member.getId());
+			int score = decoder.readSignedVarint();
+			int lifespan = decoder.readVarint();
+			snake.restoreStatistics(score, lifespan, decoder.readByte() != 0);
+			
+			int length = decoder.readVarint();
+			int[] cells = new int[length];
+			for (int i = 0, cell = 0; i < length; ++i)
+			{
+				cell += decoder.readSignedVarint();
+				cells[i] = cell;
+			}
+			int packed = 0;
+			for (int i = 0; i < length; ++i)
+			{
+				if (i % 4 == 0)
+					packed = decoder.readByte();
+				Direction dir = DIRECTIONS[(packed >>> (2 * (i % 4))) & 3];
+				snake.appendSegment(board.getPosition(cells[i] % width, cells[i] / width), dir);
+				segments.putIfAbsent((long)snake.getId() << 32 | cells[i], i);
+			}
+			snakesById[snake.getId()] = snake;
+		}
+		
+		for (int n = decoder.readVarint(), cell = -1; n > 0; --n)
+		{
+			cell += decoder.readVarint() + 1;
+			for (int count = decoder.readVarint(); count > 0; --count)
+			{
+				Snake snake = snakesById[decoder.readVarint()];
+				Integer index = segments.get((long)snake.getId() << 32 | cell);
+				if (index != null)
+					board.addSnakeSegment(snake, cell, index);
+				else
+					board.addGameObject(snake, cell);
+			}
+		}
+		
+		return new Frame(board, snakesById);
+	}
+	
+	static void encodeTick(ReplayEncoder encoder, FrameDelta delta, int width)
+	{
+		encoder.writeByte(RECORD_TICK);
+		encoder.writeByte((delta.isGrowth() ? TICK_GROWTH : 0) | (delta.hasSpawnedFruit() ? TICK_FRUIT_SPAWNED : 0));
+		
+		encoder.writeVarint(delta.getMoveCount());
+		for (int i = 0; i < delta.getMoveCount(); ++i)
+			encoder.writeVarint(delta.getMovedSnake(i) << 2 | delta.getMoveDirection(i).ordinal());
+		
+		encoder.writeVarint(delta.getKillCount());
+		for (int i = 0; i < delta.getKillCount(); ++i)
+			encoder.writeVarint(delta.getKilledSnake(i));
+		
+		encoder.writeVarint(delta.getEatenCount());
+		for (int i = 0; i < delta.getEatenCount(); ++i)
+		{
+			encoder.writeVarint(delta.getEater(i));
+			encoder.writeSignedVarint(delta.getEatenValue(i));
+		}
+		
+		if (delta.hasSpawnedFruit())
+			encoder.writeVarint(delta.getSpawnedFruitY() * width + delta.getSpawnedFruitX());
+	}
+	
+	/**
+	 * Decodes a tick whose tag has already been read.
+	 */
+	static FrameDelta decodeTick(ReplayDecoder decoder, int width)
+	{
+		int flags = decoder.readByte();
+		FrameDelta delta = new FrameDelta((flags & TICK_GROWTH) != 0);
+		
+		for (int n = decoder.readVarint(); n > 0; --n)
+		{
+			int move = decoder.readVarint();
+			delta.recordMove(move >>> 2, DIRECTIONS[move & 3]);
+		}
+		for (int n = decoder.readVarint(); n > 0; --n)
+			delta.recordKill(decoder.readVarint());
+		for (int n = decoder.readVarint(); n > 0; --n)
+		{
+			int snakeId = decoder.readVarint();
+			delta.recordFruitEaten(snakeId, decoder.readSignedVarint());
+		}
+		if ((flags & TICK_FRUIT_SPAWNED) != 0)
+		{
+			int cell = decoder.readVarint();
+			delta.recordFruitSpawned(cell % width, cell / width);
+		}
+		
+		delta.trim();
+		return delta;
+	}
+	
+	static void encodeEnd(ReplayEncoder encoder, int turnCount)
+	{
+		encoder.writeByte(RECORD_END);
+		encoder.writeVarint(turnCount);
+	}
+}
@@ -0,0 +1,190 @@
+package gameLogic;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes a replay one record at a time, so it can follow a game while it is played.
+ * Records are collected in a small buffer that is written to the channel whenever it
+ * fills up, so memory use doesn't grow with the length of the game.
+ *
+ * Uncompressed replays end with an index of where every keyframe starts, which lets a
+ * reader jump straight to any turn. The index is written by {@link #finish()}.
+ *
+ * @see		ReplayFormat
+ */
+final class ReplayWriter implements Closeable
+{
+	private static final int FLUSH_THRESHOLD = 1 << 15;
+	
+	private final WritableByteChannel channel;
+	private final boolean compress;
+	private Deflater deflater = null;
+	private DeflaterOutputStream deflaterStream = null;
+	private WritableByteChannel body;
+	
+	private final ReplayEncoder encoder = new ReplayEncoder(2 * FLUSH_THRESHOLD);
+	//~ Bytes handed to the channel so far, which is the file offset of the buffer's start.
+	private long written = 0;
+	
+	private long[] keyframeOffsets = new long[16];
+	private int keyframeCount = 0;
+	private int lastTurn = -1;
+	private int width;
+	private boolean finished = false;
+	
+	ReplayWriter(WritableByteChannel channel, boolean compress) throws IOException
+	{
+		this.channel = channel;
+		this.compress = compress;
+		
+		encoder.writeInt(ReplayFormat.MAGIC);
+		encoder.writeByte(ReplayFormat.VERSION);
+		encoder.writeByte(compress ? ReplayFormat.FLAG_DEFLATE : ReplayFormat.FLAG_INDEXED);
+		flush(channel);
+		
+		body = channel;
+		if (compress)
+		{
+			deflater = new Deflater(Deflater.BEST_SPEED);
+			deflaterStream = new DeflaterOutputStream(Channels.newOutputStream(channel), deflater, 1 << 16);
+			body = Channels.newChannel(deflaterStream);
+		}
+	}
+	
+	/**
+	 * Creates a replay file, replacing any file that is already there.
+	 */
+	static ReplayWriter create(File file, boolean compress) throws IOException
+	{
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		try
+		{
+			return new ReplayWriter(channel, compress);
+		}
+		catch (IOException e)
+		{
+			channel.close();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Writes what is needed before the first turn: the metadata, the roster, and
+	 * the keyframe of the starting position.
+	 */
+	void writeStart(Metadata metadata, Board board, Set<Snake> snakes, GameObjectType fruitType, int keyframeInterval) throws IOException
+	{
+		if (lastTurn >= 0)
+			throw new IllegalStateException("The replay has already started");
+		width = board.getWidth();
+		ReplayFormat.encodeGame(encoder, metadata, board, fruitType, keyframeInterval, snakes);
+		writeKeyframe(0, board, snakes);
+	}
+	
+	/**
+	 * Writes the changes that lead to the next turn.
+	 */
+	void writeTick(FrameDelta delta) throws IOException
+	{
+		checkStarted();
+		ReplayFormat.encodeTick(encoder, delta, width);
+		++lastTurn;
+		flushIfFull();
+	}
+	
+	/**
+	 * Writes a full copy of the board and snakes at a turn. A keyframe for the turn after
+	 * the last one written stands in for the tick leading to it.
+	 */
+	void writeKeyframe(int turn, Board board, Set<Snake> snakes) throws IOException
+	{
+		if (turn != 0)
+			checkStarted();
+		if (turn != lastTurn && turn != lastTurn + 1)
+			throw new IllegalStateException("Keyframe for turn " + turn + " after turn " + lastTurn);
+		
+		if (keyframeCount == keyframeOffsets.length)
+			keyframeOffsets = Arrays.copyOf(keyframeOffsets, 2 * keyframeCount);
+		keyframeOffsets[keyframeCount++] = written + encoder.size();
+		
+		ReplayFormat.encodeKeyframe(encoder, turn, board, snakes);
+		lastTurn = turn;
+		flushIfFull();
+	}
+	
+	int getTurnCount()
+	{
+		return lastTurn + 1;
+	}
+	
+	/**
+	 * Ends the replay and writes the keyframe index. Everything is on disk afterwards.
+	 */
+	void finish() throws IOException
+	{
+		if (finished)
+			return;
+		checkStarted();
+		ReplayFormat.encodeEnd(encoder, getTurnCount());
+		
+		if (!compress)
+		{
+			long indexOffset = written + encoder.size();
+			encoder.writeInt(getTurnCount());
+			encoder.writeInt(keyframeCount);
+			for (int i = 0; i < keyframeCount; ++i)
+				encoder.writeLong(keyframeOffsets[i]);
+			encoder.writeLong(indexOffset);
+			encoder.writeInt(ReplayFormat.INDEX_MAGIC);
+		}
+		flush(body);
+		
+		if (deflaterStream != null)
+			deflaterStream.finish();
+		finished = true;
+	}
+	
+	public void close() throws IOException
+	{
+		try
+		{
+			if (deflater != null)
+				deflater.end();
+		}
+		finally
+		{
+			channel.close();
+		}
+	}
+	
+	private void checkStarted()
+	{
+		if (lastTurn < 0)
+			throw new IllegalStateException("The replay has not started");
+		if (finished)
+			throw new IllegalStateException("The replay has already been finished");
+	}
+	
+	private void flushIfFull() throws IOException
+	{
+		if (encoder.size() >= FLUSH_THRESHOLD)
+			flush(body);
+	}
+	
+	private void flush(WritableByteChannel target) throws IOException
+	{
+		written += encoder.size();
+		encoder.writeTo(target);
+		encoder.reset();
+	}
+}
@@ -1,5 +1,8 @@
 package gameLogic;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
 
 /**
@@ -14,20 +17,38 @@ import java.util.*;
 public class Session implements Game
 {
 	private Board board;
-	private Set<Snake> snakes = new HashSet<Snake>();
+	//~ Kept in the order the snakes were added, which is also the order of their ids, so
+	//~ that every pass over the snakes happens in the same order each time a game is played.
+	private Set<Snake> snakes = new LinkedHashSet<Snake>();
+	
+	//~ Snakes indexed by id, and the square each snake's head is in, for the collision pass.
+	private ArrayList<Snake> snakesById = new ArrayList<Snake>();
+	private int[] headCells = new int[0];
 	private Map<Snake, ErrorState> snakeErrors = new HashMap<Snake, ErrorState>();
+	private Map<Snake, ThinkingStatistics> thinkingStatistics = new LinkedHashMap<Snake, ThinkingStatistics>();
 	
-	private Random random = new Random();
+	private Random random;
 	
 	private HashMap<String, GameObjectType> objects = new HashMap<String, GameObjectType>();
-
+	
 	private Metadata metadata;
 	
 	private RecordedGame recordedGame = null;
 	
+	private DecisionDispatcher decisionDispatcher = new DecisionDispatcher();
+	
+	private TickMetrics tickMetrics = new TickMetrics();
+	private SquareChanges squareChanges = new SquareChanges();
+	
+	/**
+	 * Creates a session. All its random choices come from the seed of the metadata.
+	 * 
+	 * @param	metadata	The settings of the game.
+	 */
 	public Session(Metadata metadata)
 	{
 		this.metadata = metadata;
+		this.random = new Random(metadata.getSeed());
 		
 		initGameObjects();
 		
@@ -49,7 +70,12 @@ public class Session implements Game
 		if (newSnake == null)
 			throw new IllegalArgumentException("Trying to add a null Snake.");
 		
-		snakes.add(newSnake);
+		if (snakes.add(newSnake))
+		{
+			newSnake.setId(snakesById.size());
+			snakesById.add(newSnake);
+			thinkingStatistics.put(newSnake, new ThinkingStatistics());
+		}
 	}
 	
 	public Board getBoard()
@@ -59,14 +85,17 @@ public class Session implements Game
 	
 	public Set<Snake> getSnakes()
 	{
-		return new HashSet<Snake>(snakes);
+		return new LinkedHashSet<Snake>(snakes);
 	}
 	
 	public void prepareForStart()
 	{
 		placeSnakesOnBoard();
+		headCells = new int[snakesById.size()];
+		for (Snake snake : snakesById)
+			headCells[snake.getId()] = board.cellOf(snake.getHeadPosition());
 		
-		recordedGame = new RecordedGame(metadata, board, snakes);
+		recordedGame = new RecordedGame(metadata, board, snakes, objects.get("Fruit"));
 	}
 	
 	/**
@@ -83,7 +112,7 @@ public class Session implements Game
 		for (Snake snake : snakes)
 			if (snake.isDead())
 				--numberOfLivingSnakes;
-
+		
 		if (numberOfLivingSnakes == 0 || (numberOfLivingSnakes < 2 && snakes.size() >= 2))
 			return true;
 		
@@ -93,7 +122,7 @@ public class Session implements Game
 			if (snake.getScore() >= metadata.getFruitGoal())
 				return true;
 		}
-
+		
 		return false;
 	}
 	
@@ -106,7 +135,40 @@ public class Session implements Game
 	 */
 	public GameResult getGameResult()
 	{
-		return new GameResult(snakes, metadata, recordedGame);
+		return new GameResult(snakes, metadata, recordedGame, thinkingStatistics);
+	}
+	
+	/**
+	 * Gets how long the phases of this session's ticks have taken so far. A listener can
+	 * be set on the metrics to hear about every tick as it ends.
+	 *
+	 * @return	The tick metrics of this session.
+	 */
+	public TickMetrics getTickMetrics()
+	{
+		return tickMetrics;
+	}
+	
+	/**
+	 * Takes a copy of the game as it is now, that later ticks don't change. Must be
+	 * called between ticks, on the thread that ticks.
+	 *
+	 * @return	A snapshot of the current turn.
+	 */
+	public SessionSnapshot takeSnapshot()
+	{
+		return new SessionSnapshot(board, snakes, metadata, recordedGame.getTurnCount());
+	}
+	
+	/**
+	 * Gets the squares that changed in the latest ticks, so that the board can be drawn
+	 * by only redrawing those.
+	 *
+	 * @return	The square changes of this session.
+	 */
+	public SquareChanges getSquareChanges()
+	{
+		return squareChanges;
 	}
 	
 	/**
@@ -115,20 +177,130 @@ public class Session implements Game
 	 */
 	public void tick()
 	{
+		Map<Snake, Direction> moves = getDecisionsFromSnakes();
+		tick(moves);
+	}
+	
+	/**
+	 * Plays a tick with moves that have already been decided, without asking any brain.
+	 * 
+	 * @param	moves	The move of every living snake, in the order of the snakes.
+	 */
+	void tick(Map<Snake, Direction> moves)
+	{
+		long start = System.nanoTime();
 		boolean growth = checkForGrowth();
-		Map<Snake, Direction> moves = getDecisionsFromSnakes();	
-		moveAllSnakes(moves, growth);
-		checkForCollision();
-		perhapsSpawnFruit();
+		FrameDelta delta = new FrameDelta(growth);
+		long grown = System.nanoTime();
+		List<Position> changedSquares = new ArrayList<Position>(4 * moves.size() + 1);
+		addEnds(moves.keySet(), changedSquares);
+		moveAllSnakes(moves, growth, delta);
+		long moved = System.nanoTime();
+		checkForCollision(delta);
+		perhapsSpawnFruit(delta);
+		addEnds(moves.keySet(), changedSquares);
+		if (delta.hasSpawnedFruit())
+			changedSquares.add(board.getPosition(delta.getSpawnedFruitX(), delta.getSpawnedFruitY()));
+		long collided = System.nanoTime();
 		
-		Frame frame = new Frame(board, snakes);
-		recordedGame.addFrame(frame);
+		try
+		{
+			recordedGame.recordTick(delta, board, snakes);
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException("Could not write the replay", e);
+		}
+		long recorded = System.nanoTime();
+		
+		tickMetrics.record(TickMetrics.Phase.GROWTH_CHECK, grown - start);
+		tickMetrics.record(TickMetrics.Phase.MOVEMENT, moved - grown);
+		tickMetrics.record(TickMetrics.Phase.COLLISIONS, collided - moved);
+		tickMetrics.record(TickMetrics.Phase.RECORDING, recorded - collided);
+		squareChanges.record(recordedGame.getTurnCount(), changedSquares);
+		tickMetrics.endTick(recordedGame.getTurnCount());
+	}
+	
+	/**
+	 * Adds the head and tail squares of some snakes to a list. Called before and after
+	 * the snakes move, it gives every square that looks different after the move.
+	 */
+	private static void addEnds(Collection<Snake> movingSnakes, List<Position> squares)
+	{
+		for (Snake snake : movingSnakes)
+		{
+			squares.add(snake.getHeadPosition());
+			squares.add(snake.getTailPosition());
+		}
+	}
+	
+	/**
+	 * Writes the replay to a file while the game is played, instead of keeping every turn
+	 * in memory. Must be called after prepareForStart() and before the first tick. The
+	 * file is complete once cleanup() has been called, and the recorded game in the
+	 * result reads the turns back from it.
+	 *
+	 * @param	file	The replay file, which is replaced if it exists.
+	 * @throws	IOException	If the file could not be created.
+	 */
+	public void streamReplayTo(File file) throws IOException
+	{
+		recordedGame.streamTo(file);
 	}
 	
 	public void cleanup()
 	{
+		decisionDispatcher.shutdown();
 		for (Snake snake : snakes)
 			snake.removeBrain();
+		
+		try
+		{
+			recordedGame.finishRecording();
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException("Could not write the replay", e);
+		}
+	}
+	
+	/**
+	 * Plays a game again from the moves recorded during it, without any brains. Since a
+	 * session makes the same random choices for the same seed, this gives back the game
+	 * the moves were recorded from.
+	 * 
+	 * @param	metadata	The metadata of the game, with its seed.
+	 * @param	moves		The moves made during the game.
+	 * @return	The recording of the game played again.
+	 * @throws	IOException	If the moves don't fit the game, because they are damaged or
+	 *						were recorded with different rules.
+	 */
+	static RecordedGame replay(Metadata metadata, MoveLog moves) throws IOException
+	{
+		Session session = new Session(metadata);
+		for (Snake snake : moves.getRoster())
+			session.addSnake(new Snake(snake.getType(), snake.getName(), null, snake.getColor()));
+		session.prepareForStart();
+		
+		MoveLog.Reader reader = moves.reader();
+		for (int tick = 0; tick < moves.getTickCount(); ++tick)
+		{
+			Map<Snake, Direction> tickMoves = new LinkedHashMap<Snake, Direction>();
+			for (Snake snake : session.snakesById)
+			{
+				if (snake.isDead())
+					continue;
+				if (!reader.hasNext())
+					throw new IOException("The recorded moves end before the game does");
+				tickMoves.put(snake, reader.next());
+			}
+			session.tick(tickMoves);
+		}
+		if (reader.hasNext())
+			throw new IOException("There are recorded moves left after the game has ended");
+		
+		session.cleanup();
+		return session.recordedGame;
 	}
 	
 	private boolean checkForGrowth()
@@ -138,22 +310,23 @@ public class Session implements Game
 	}
 	
 	/**
-	 * Returns a HashMap, with each position containing a Snake object and
+	 * Returns a Map, with each position containing a Snake object and
 	 * the Direction towards which the given snake wishes to move next turn. 
-	 * Spawns a single thread for each participating snake, then waits until
-	 * their allotted time is up. If a snake hasn't responed yet, it's direction
-	 * is defaulted to Direction.FORWARD.
+	 * Hands the current state to the decision worker of each participating snake,
+	 * then waits until their allotted time is up. If a snake hasn't responed yet,
+	 * it's direction is defaulted to Direction.FORWARD.
 	 * 
-	 * @see		BrainDecision
-	 * @return 	The HashMap containing snakes and their next moves.
+	 * @see		DecisionDispatcher
+	 * @return 	The Map containing snakes and their next moves, in the order of the snakes.
 	 */
 	private Map<Snake, Direction> getDecisionsFromSnakes()
 	{
-		Map<Snake, BrainDecision> decisionThreads = new HashMap<Snake, BrainDecision>();
-		Map<Snake, Direction> moves = new HashMap<Snake, Direction>();
-		//~ Using a HashMap here since I'm unsure of the sorting order of snakes.values() below.
+		Map<Snake, GameState> states = new LinkedHashMap<Snake, GameState>();
+		Map<Snake, Direction> moves = new LinkedHashMap<Snake, Direction>();
 		
-		//~ Prepare some decision threads.
+		//~ Every brain shares the same copy of the board this turn.
+		long start = System.nanoTime();
+		GameSnapshot snapshot = new GameSnapshot(board, snakes, metadata);
 		for (Snake snake : snakes)
 		{
 			if (!snake.isDead())
@@ -164,77 +337,54 @@ public class Session implements Game
 					errorState = snakeErrors.get(snake);
 					snakeErrors.remove(snake);
 				}
-				GameState currentGameState = new GameState(board, snakes, metadata, errorState);
-				BrainDecision bd = new BrainDecision(snake, currentGameState);
-				decisionThreads.put(snake, bd);
+				states.put(snake, new GameState(snapshot, errorState));
 			}
 		}
+		long dispatched = System.nanoTime();
+		tickMetrics.record(TickMetrics.Phase.SNAPSHOT, dispatched - start);
 		
-		//~ Start all the decision threads.
-		for (BrainDecision brainDecision : decisionThreads.values())
-			brainDecision.start();
+		//~ Get all the living snakes thinking.
+		for (Map.Entry<Snake, GameState> state : states.entrySet())
+			decisionDispatcher.dispatch(state.getKey(), state.getValue(), thinkingStatistics.get(state.getKey()));
 		
 		//~ Chill out while the snakes are thinking.
-		for (long time = System.currentTimeMillis(); System.currentTimeMillis() < time + metadata.getMaximumThinkingTime(); )
-		{
-			boolean everyoneIsDone = true;
-			for (Map.Entry<Snake, BrainDecision> decisionThread : decisionThreads.entrySet())
-			{
-				if (decisionThread.getValue().isAlive())
-				{
-					everyoneIsDone = false;
-					break;
-				}
-			}
-			
-			if (everyoneIsDone)
-				break;
-			
-			sleep(1);
-		}
+		decisionDispatcher.awaitDecisions(metadata.getMaximumThinkingTime());
 		
 		
-		for (Map.Entry<Snake, BrainDecision> decisionThread : decisionThreads.entrySet())
+		for (Snake currentSnake : states.keySet())
 		{
-			Snake currentSnake = decisionThread.getKey();
-			BrainDecision decision = decisionThread.getValue();
 			Direction actualMove = currentSnake.getCurrentDirection();
+			ThinkingStatistics statistics = thinkingStatistics.get(currentSnake);
 			try 
 			{
-				Direction nextMove = decision.demandNextMove();
+				Direction nextMove = decisionDispatcher.demandNextMove(currentSnake);
 				if (isValidMove(currentSnake, nextMove))
 					actualMove = nextMove;
 				else
+				{
 					snakeErrors.put(currentSnake, ErrorState.INVALID_MOVE);
+					statistics.recordInvalidMove();
+				}
 			}
 			catch (java.util.concurrent.TimeoutException t)
 			{
 				snakeErrors.put(currentSnake, ErrorState.TOO_SLOW);
+				statistics.recordTimeout();
 			}
 			catch (Throwable t)
 			{
 				System.out.println(currentSnake + " is tossing an exception in our face: " + t);
 				snakeErrors.put(currentSnake, ErrorState.EXCEPTION);
+				statistics.recordException();
 			}
 			
 			moves.put(currentSnake, actualMove);
-			
+		
 		}
+		tickMetrics.record(TickMetrics.Phase.DECISIONS, System.nanoTime() - dispatched);
 		return moves;
 	}
 	
-	static private void sleep(int ms)
-	{
-		try
-		{
-			Thread.sleep(ms);
-		}
-		catch (InterruptedException e)
-		{
-			System.out.println(e);
-		}
-	}
-	
 	/**
 	 * Checks that moving in a given direction is valid, e g that the snake
 	 * doesn't attempt to turn 180 degrees.
@@ -249,13 +399,13 @@ public class Session implements Game
 		{
 			case NORTH:
 				return (direction != Direction.SOUTH);
-
+			
 			case WEST:
 				return (direction != Direction.EAST);
-
+			
 			case SOUTH:
 				return (direction != Direction.NORTH);
-
+			
 			case EAST:
 				return (direction != Direction.WEST);
 			
@@ -269,12 +419,14 @@ public class Session implements Game
 	 * 
 	 * @param	moves		Map of each snake to its desired movement.
 	 * @param	growSnakes	Whether or not snakes are supposed to grow this turn.
+	 * @param	delta		Where the moves of this tick are recorded.
 	 */
-	private void moveAllSnakes(Map<Snake, Direction> moves, boolean growSnakes)
+	private void moveAllSnakes(Map<Snake, Direction> moves, boolean growSnakes, FrameDelta delta)
 	{
 		for (Map.Entry<Snake, Direction> snakeMove : moves.entrySet())
 		{
 			moveSnake(snakeMove.getKey(), snakeMove.getValue(), growSnakes);
+			delta.recordMove(snakeMove.getKey(), snakeMove.getValue());
 		}
 	}
 	
@@ -289,69 +441,72 @@ public class Session implements Game
 	 */
 	private void moveSnake(Snake snake, Direction dir, boolean grow)
 	{
-		Position newHeadPosition = snake.moveHead(dir);
-		board.addGameObject(snake, newHeadPosition);
+		headCells[snake.getId()] = board.moveSnakeHead(snake, dir);
 		if (!grow)
-		{
-			board.removeGameObject(snake, snake.removeTail());
-		}
+			board.removeSnakeTail(snake);
 	}
-
+	
 	/**
 	 * Checks if any collision has occured, and performs necessary actions. 
 	 * If the head of a snake has collided with a lethal object, that snake is 
 	 * killed (e g marked as dead). If it collided with a fruit, the appropriate amount of points is
 	 * added to that snake's score.
+	 * 
+	 * Only the squares in the head table are looked at, and the board keeps count of
+	 * how many snake segments share each square, so this is O(snakes) and doesn't
+	 * allocate anything.
+	 * 
+	 * @param	delta	Where the deaths and eaten fruit of this tick are recorded.
 	 */
-	private void checkForCollision()
+	private void checkForCollision(FrameDelta delta)
 	{
-		for (Snake snake : snakes) 
+		for (int id = 0; id < snakesById.size(); ++id) 
 		{
+			Snake snake = snakesById.get(id);
 			if (snake.isDead())
 				continue;
 			
-			Position head = snake.getHeadPosition();
-			Square square = board.getSquare(head);
-			if (square.hasWall() || (square.hasSnake() && (square.getSnakes().size() > 1)))
+			int head = headCells[id];
+			if (board.hasWall(head) || board.getSnakeCount(head) > 1)
 			{
 				snake.kill();
+				decisionDispatcher.dismiss(snake);
+				delta.recordKill(snake);
 				continue;
 			}
 			else
 				snake.increaseLifespan();
 			
-			if (square.hasFruit()) 
+			if (board.hasFruit(head)) 
 			{
-				int fruitValue = square.eatFruit();
+				int fruitValue = board.eatFruit(head);
 				snake.addScore(fruitValue);
+				delta.recordFruitEaten(snake, fruitValue);
 			}
 		}
 	}
 	
 	/**
 	 * Checks if it is time to spawn a new fruit on the map, and does so if necessary.
+	 * The fruit is put on an empty square, picked uniformly at random.
 	 *
-	 * @return	<code>true</code> if a fruit was spawned, <code>false</code> if not.
+	 * @return	<code>true</code> if a fruit was spawned, <code>false</code> if not,
+	 *			including when the board is full and there is nowhere to put it.
+	 * @param	delta	Where the spawned fruit is recorded.
 	 */
-	private boolean perhapsSpawnFruit()
+	private boolean perhapsSpawnFruit(FrameDelta delta)
 	{
 		int timeTillFruitSpawn = recordedGame.getTurnCount() % metadata.getFruitFrequency();
 		
 		if (timeTillFruitSpawn != 0)
 			return false;
 		
-		boolean spawned = false;
-		while (!spawned)
-		{
-			int x = 1 + random.nextInt(board.getWidth() - 2);
-			int y = 1 + random.nextInt(board.getHeight() - 2);
-			Position potentialFruitPosition = new Position(x, y);
-			if (!board.hasGameObject(potentialFruitPosition))
-			{
-				board.addGameObject(objects.get("Fruit"), potentialFruitPosition);
-				spawned = true;
-			}
-		}
+		Position fruitPosition = board.getRandomFreePosition(random);
+		if (fruitPosition == null)
+			return false;
+		
+		board.addGameObject(objects.get("Fruit"), fruitPosition);
+		delta.recordFruitSpawned(fruitPosition);
 		return true;
 	}
 	
@@ -384,8 +539,8 @@ public class Session implements Game
 	
 	private void placeSnakesOnBoard()
 	{
-		Position[] startingPositions = getStartingHeadPositions(snakes.size(), board.getWidth(), board.getHeight());
-		Collections.shuffle(Arrays.asList(startingPositions));
+		Position[] startingPositions = getStartingHeadPositions(snakes.size(), board.getWidth(), board.getHeight(), random);
+		Collections.shuffle(Arrays.asList(startingPositions), random);
 		int positionIndex = 0;
 		for (Snake snake : snakes)
 		{
@@ -401,17 +556,17 @@ public class Session implements Game
 				if(p.getY() < 0)
 				{
 					snakeDirection = Direction.NORTH;
-					
+				
 				} else {
 					snakeDirection = Direction.WEST;
 				}
-				
+			
 			} else {
 				
 				if(p.getY() < 0)
 				{
 					snakeDirection = Direction.EAST;
-					
+				
 				} else {
 					snakeDirection = Direction.SOUTH;
 				}
@@ -423,7 +578,7 @@ public class Session implements Game
 			snakePositions.add(start);
 			snake.placeOnBoard(snakePositions, snakeDirection); //snakeDirection was previously Direction.NORTH
 		}
-		
+	
 	}
 	
 	
@@ -441,12 +596,11 @@ public class Session implements Game
 	 * @param	snakes	The number of snakes in the game.
 	 * @param	xSize	The width of the board.
 	 * @param	ySize	The height of the board.
+	 * @param	random	Where the angle of the first position comes from.
 	 * @return	An array of starting positions with as many elements as the number of snakes in the game.
 	 */
-	private static Position[] getStartingHeadPositions(int snakes, int xSize, int ySize)
+	private static Position[] getStartingHeadPositions(int snakes, int xSize, int ySize, Random random)
 	{
-		Random random = new Random();
-		
 		int xCenter = xSize/2;
 		int yCenter = ySize/2;
 		
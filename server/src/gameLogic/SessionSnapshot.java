@@ -0,0 +1,51 @@
+package gameLogic;
+
+import java.util.Set;
+
+/**
+ * A copy of a session at the end of a tick, with copies of the board and the snakes,
+ * so it can be drawn from any thread while the session goes on ticking. Nothing in it
+ * ever changes.
+ *
+ * @see		Session#takeSnapshot()
+ * @see		SimulationThread
+ */
+public final class SessionSnapshot implements Game
+{
+	private final GameSnapshot snapshot;
+	private final Metadata metadata;
+	private final int turn;
+	
+	SessionSnapshot(Board board, Set<Snake> snakes, Metadata metadata, int turn)
+	{
+		this.snapshot = new GameSnapshot(new Frame(board, snakes), metadata);
+		this.metadata = metadata;
+		this.turn = turn;
+	}
+	
+	public GameState getCurrentState()
+	{
+		return new GameState(snapshot, ErrorState.NO_ERROR);
+	}
+	
+	public Metadata getMetadata()
+	{
+		return metadata;
+	}
+	
+	/**
+	 * Gets the standings at the time of the snapshot. The result has no recorded game.
+	 */
+	public GameResult getGameResult()
+	{
+		return new GameResult(snapshot.getSnakes(), metadata, null);
+	}
+	
+	/**
+	 * Gets the turn the session was at when the snapshot was taken.
+	 */
+	public int getTurn()
+	{
+		return turn;
+	}
+}
@@ -0,0 +1,137 @@
+package gameLogic;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Plays a session on a thread of its own, for showing it while it is played. After
+ * a tick a {@link SessionSnapshot} is published, and whoever draws the game picks up
+ * the latest one whenever it is ready to draw, without ever waiting for a tick or
+ * seeing one half done. A tick never waits for drawing either, so with no delay
+ * between ticks the game goes as fast as the brains answer.
+ *
+ * Taking a snapshot copies the board, so a new one is only taken once the last one
+ * has been picked up. When the game goes faster than it is drawn, the ticks in
+ * between are skipped over, and the last tick of the game is always published.
+ *
+ * As a Game, the thread is always at its latest snapshot. Its square changes are only
+ * published after the snapshot of their turn, so a board that reads the turn first
+ * never draws a snapshot older than the turn it has read.
+ *
+ * @see		Session#takeSnapshot()
+ */
+public class SimulationThread extends Thread implements Game
+{
+	private final Session session;
+	private final int tickDelay;
+	private final AtomicReference<SessionSnapshot> latest;
+	private final AtomicBoolean taken = new AtomicBoolean(false);
+	private int publishedTurn;
+	private final SquareChanges squareChanges = new SquareChanges();
+	private volatile RuntimeException failure = null;
+	
+	/**
+	 * Creates the thread and publishes a snapshot of the session as it is now. The
+	 * session must be ready to start, and nothing else may tick it once the thread has
+	 * been started.
+	 *
+	 * @param	session		The session to play.
+	 * @param	tickDelay	How many milliseconds to wait after each tick, 0 to go
+	 *						as fast as possible.
+	 */
+	public SimulationThread(Session session, int tickDelay)
+	{
+		super("Simulation");
+		setDaemon(true);
+		if (tickDelay < 0)
+			throw new IllegalArgumentException("Negative delay between ticks: " + tickDelay);
+		
+		this.session = session;
+		this.tickDelay = tickDelay;
+		this.latest = new AtomicReference<SessionSnapshot>(session.takeSnapshot());
+		this.publishedTurn = latest.get().getTurn();
+	}
+	
+	public void run()
+	{
+		try
+		{
+			boolean published = true;
+			while (!session.hasEnded())
+			{
+				session.tick();
+				
+				published = taken.get();
+				if (published)
+					publish();
+				
+				if (tickDelay > 0)
+					Thread.sleep(tickDelay);
+			}
+			
+			if (!published)
+				publish();
+		}
+		catch (InterruptedException e)
+		{
+		}
+		catch (RuntimeException e)
+		{
+			failure = e;
+		}
+	}
+	
+	private void publish()
+	{
+		SessionSnapshot snapshot = session.takeSnapshot();
+		taken.set(false);
+		latest.set(snapshot);
+		
+		//~ Null if the session no longer has them, which has the board drawn again.
+		int turn = snapshot.getTurn();
+		squareChanges.record(turn, session.getSquareChanges().getChangedSince(publishedTurn));
+		publishedTurn = turn;
+	}
+	
+	/**
+	 * Gets the latest snapshot, and lets the thread know it can take a new one.
+	 */
+	public SessionSnapshot getLatestSnapshot()
+	{
+		taken.set(true);
+		return latest.get();
+	}
+	
+	/**
+	 * Gets the squares changed in the latest ticks, published after the snapshots.
+	 */
+	public SquareChanges getSquareChanges()
+	{
+		return squareChanges;
+	}
+	
+	/**
+	 * Gets what stopped the session from being played to the end, if anything.
+	 *
+	 * @return	The exception a tick threw, or null.
+	 */
+	public RuntimeException getFailure()
+	{
+		return failure;
+	}
+	
+	public GameState getCurrentState()
+	{
+		return getLatestSnapshot().getCurrentState();
+	}
+	
+	public Metadata getMetadata()
+	{
+		return session.getMetadata();
+	}
+	
+	public GameResult getGameResult()
+	{
+		return getLatestSnapshot().getGameResult();
+	}
+}
@@ -1,7 +1,10 @@
 package gameLogic;
 
 import java.io.Serializable;
+import java.util.AbstractList;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.RandomAccess;
 import java.awt.Color;
 
 /**
@@ -18,14 +21,32 @@ import java.awt.Color;
 
 public class Snake extends GameObject implements Serializable
 {
+	private static final Direction[] DIRECTIONS = Direction.values();
+	
 	private String name;
 	private Brain brain;
-	private LinkedList<Position> segments;
-	private LinkedList<SnakeSegment> directionLog = new LinkedList<SnakeSegment>();
+	
+	//~ The body is a ring buffer, with the head at index head and the tail length-1
+	//~ steps after it. Each square is packed as x << 16 | y, and each direction is
+	//~ stored as its ordinal. The capacity is always a power of two.
+	private int[] cells = new int[4];
+	private byte[] directions = new byte[4];
+	private int head = 0;
+	private int length = 0;
+	private Position headPosition = null;
+	
+	//~ Counts the moves of the head. Segment i came in at move headSerial - i, which
+	//~ stays the same as the snake moves, so the board can keep it to find the segment.
+	private int headSerial = 0;
+	
+	//~ The table of the board the snake is on, for handing out its positions.
+	private transient PositionTable positions = null;
+	
 	private int score = 0;
 	private int lifespan = 0;
 	private boolean isDead = false;
 	private Color color;
+	private int id = -1;
 	
 	public Snake(GameObjectType type, String name, Brain brain, Color color)
 	{
@@ -40,22 +61,104 @@ public class Snake extends GameObject implements Serializable
 		super(other.getType());
 		this.name = other.name;
 		this.brain = null;
-		this.segments = new LinkedList<Position>(other.segments);
-		this.directionLog = new LinkedList<SnakeSegment>(other.directionLog);
+		int capacity = 4;
+		while (capacity < other.length)
+			capacity <<= 1;
+		this.cells = new int[capacity];
+		this.directions = new byte[capacity];
+		for (int i = 0; i < other.length; ++i)
+		{
+			int index = other.ringIndex(i);
+			cells[i] = other.cells[index];
+			directions[i] = other.directions[index];
+		}
+		this.length = other.length;
+		this.headPosition = other.headPosition;
+		this.headSerial = other.headSerial;
+		this.positions = other.positions;
 		this.score = other.score;
 		this.lifespan = other.lifespan;
 		this.isDead = other.isDead;
 		this.color = other.color;
+		this.id = other.id;
 	}
 	
 	/**
-	 * Get a list of all the squares this snake has occupied.
+	 * Get a list of all the squares this snake has occupied. The list is a copy, so 
+	 * for long snakes {@link #getSegmentView()} or {@link #getSegment(int)} are cheaper.
 	 * 
 	 * @return A list of the positions of the occupied squares.
 	 */
 	public LinkedList<Position> getSegments()
 	{
-		return new LinkedList<Position>(segments);
+		return new LinkedList<Position>(getSegmentView());
+	}
+	
+	/**
+	 * Gets a read-only view of the squares this snake occupies, starting at the head.
+	 * Nothing is copied, and the view follows the snake as it moves.
+	 * 
+	 * @return A list of the positions of the occupied squares.
+	 */
+	public List<Position> getSegmentView()
+	{
+		return new SegmentView();
+	}
+	
+	/**
+	 * Gets the number of squares this snake occupies.
+	 * 
+	 * @return The length of the snake.
+	 */
+	public int getLength()
+	{
+		return length;
+	}
+	
+	/**
+	 * Gets the position of one of this snake's segments. Segment 0 is the head and
+	 * segment <code>getLength()-1</code> is the tail.
+	 * 
+	 * @param index The index of the segment.
+	 * @return The position of that segment.
+	 */
+	public Position getSegment(int index)
+	{
+		return PositionTable.intern(positions, getSegmentX(index), getSegmentY(index));
+	}
+	
+	/**
+	 * Gets the x coordinate of one of this snake's segments, without creating a Position.
+	 * 
+	 * @param index The index of the segment, 0 being the head.
+	 * @return The x coordinate of that segment.
+	 */
+	public int getSegmentX(int index)
+	{
+		return cells[ringIndex(index)] >>> 16;
+	}
+	
+	/**
+	 * Gets the y coordinate of one of this snake's segments, without creating a Position.
+	 * 
+	 * @param index The index of the segment, 0 being the head.
+	 * @return The y coordinate of that segment.
+	 */
+	public int getSegmentY(int index)
+	{
+		return cells[ringIndex(index)] & 0xFFFF;
+	}
+	
+	/**
+	 * Gets the direction the snake was moving in when its head entered the square of
+	 * one of its segments.
+	 * 
+	 * @param index The index of the segment, 0 being the head.
+	 * @return The direction of that segment.
+	 */
+	public Direction getSegmentDirection(int index)
+	{
+		return DIRECTIONS[directions[ringIndex(index)]];
 	}
 	
 	/**
@@ -69,7 +172,10 @@ public class Snake extends GameObject implements Serializable
 	 */
 	public LinkedList<SnakeSegment> getDrawData()
 	{
-		return new LinkedList<SnakeSegment>(directionLog);
+		LinkedList<SnakeSegment> drawData = new LinkedList<SnakeSegment>();
+		for (int i = 0; i < length; ++i)
+			drawData.add(new SnakeSegment(getSegment(i), getSegmentDirection(i)));
+		return drawData;
 	}
 	
 	/**
@@ -82,12 +188,11 @@ public class Snake extends GameObject implements Serializable
 	@Deprecated //also no longer used anywhere
 	public Direction getDirection(Position position)
 	{
-		for(SnakeSegment ss : directionLog)
+		int packed = pack(position.getX(), position.getY());
+		for (int i = 0; i < length; ++i)
 		{
-			if(ss.getPos().equals(position))
-			{
-				return ss.getDir();
-			}
+			if (cells[ringIndex(i)] == packed)
+				return getSegmentDirection(i);
 		}
 		
 		return null;
@@ -101,7 +206,9 @@ public class Snake extends GameObject implements Serializable
 	 */
 	public Position getHeadPosition()
 	{
-		return segments.getFirst();
+		if (length == 0)
+			throw new java.util.NoSuchElementException();
+		return headPosition;
 	}
 	
 	/**
@@ -111,7 +218,9 @@ public class Snake extends GameObject implements Serializable
 	 */
 	public Position getTailPosition()
 	{
-		return segments.getLast();
+		if (length == 0)
+			throw new java.util.NoSuchElementException();
+		return getSegment(length - 1);
 	}
 	
 	/**
@@ -134,7 +243,9 @@ public class Snake extends GameObject implements Serializable
 	 */
 	public Direction getCurrentDirection()
 	{
-		return directionLog.getFirst().getDir();
+		if (length == 0)
+			throw new java.util.NoSuchElementException();
+		return getSegmentDirection(0);
 	}
 	
 	/**
@@ -170,27 +281,129 @@ public class Snake extends GameObject implements Serializable
 	
 	void placeOnBoard(LinkedList<Position> segments, Direction originalDirection)
 	{
-		this.segments = segments;
-		
-		for(Position p : segments)
+		head = 0;
+		length = 0;
+		for (Position p : segments)
 		{
-			directionLog.add(new SnakeSegment(p, originalDirection));
+			ensureCapacity(length + 1);
+			cells[length] = pack(p.getX(), p.getY());
+			directions[length] = (byte)originalDirection.ordinal();
+			++length;
 		}
+		headPosition = segments.isEmpty() ? null : segments.getFirst();
 	}
 	
 	Position moveHead(Direction dir)
 	{
-		Position pos = dir.calculateNextPosition(getHeadPosition());
-		segments.addFirst(pos);
-		directionLog.addFirst(new SnakeSegment(pos, dir));
+		Position pos = dir.calculateNextPosition(getHeadPosition(), positions);
+		ensureCapacity(length + 1);
+		head = (head - 1) & (cells.length - 1);
+		cells[head] = pack(pos.getX(), pos.getY());
+		directions[head] = (byte)dir.ordinal();
+		++length;
+		++headSerial;
+		headPosition = pos;
 		
 		return pos;
 	}
 	
-	Position removeTail()
+	void removeTail()
+	{
+		if (length == 0)
+			throw new java.util.NoSuchElementException();
+		--length;
+	}
+	
+	/**
+	 * Adds a segment behind the current tail. Used when a snake is read back from a replay.
+	 */
+	void appendSegment(Position pos, Direction dir)
+	{
+		ensureCapacity(length + 1);
+		int index = (head + length) & (cells.length - 1);
+		cells[index] = pack(pos.getX(), pos.getY());
+		directions[index] = (byte)dir.ordinal();
+		if (length == 0)
+			headPosition = pos;
+		++length;
+	}
+	
+	void restoreStatistics(int score, int lifespan, boolean isDead)
+	{
+		this.score = score;
+		this.lifespan = lifespan;
+		this.isDead = isDead;
+	}
+	
+	/**
+	 * Tells the snake which board it is on. Called by the board when it puts the snake
+	 * on a square.
+	 */
+	void setPositionTable(PositionTable positions)
+	{
+		this.positions = positions;
+	}
+	
+	/**
+	 * Gets the serial of a segment, which doesn't change as the snake moves.
+	 */
+	int getSegmentSerial(int index)
+	{
+		return headSerial - index;
+	}
+	
+	/**
+	 * Gets the index of the segment with a given serial, or -1 if it has left the snake.
+	 */
+	int getSegmentIndex(int serial)
+	{
+		int index = headSerial - serial;
+		return index >= 0 && index < length ? index : -1;
+	}
+	
+	/**
+	 * Goes through the body for the segment nearest the head in a given square.
+	 * 
+	 * @return	The index of the segment, or -1 if the snake isn't in the square.
+	 */
+	int findSegment(int x, int y)
+	{
+		int packed = pack(x, y);
+		for (int i = 0; i < length; ++i)
+			if (cells[ringIndex(i)] == packed)
+				return i;
+		return -1;
+	}
+	
+	private int ringIndex(int index)
 	{
-		directionLog.removeLast();
-		return segments.removeLast();
+		if (index < 0 || index >= length)
+			throw new IndexOutOfBoundsException("Segment " + index + " of a snake of length " + length);
+		return (head + index) & (cells.length - 1);
+	}
+	
+	private void ensureCapacity(int capacity)
+	{
+		if (capacity <= cells.length)
+			return;
+		
+		//~ Unwrap the ring into arrays twice the size, with the head at index 0.
+		int[] newCells = new int[cells.length * 2];
+		byte[] newDirections = new byte[cells.length * 2];
+		for (int i = 0; i < length; ++i)
+		{
+			int index = (head + i) & (cells.length - 1);
+			newCells[i] = cells[index];
+			newDirections[i] = directions[index];
+		}
+		cells = newCells;
+		directions = newDirections;
+		head = 0;
+	}
+	
+	private static int pack(int x, int y)
+	{
+		return (x << 16) | (y & 0xFFFF);
 	}
 	
 	void kill()
@@ -198,11 +411,21 @@ public class Snake extends GameObject implements Serializable
 		isDead = true;
 	}
 	
+	int getId()
+	{
+		return id;
+	}
+	
+	void setId(int id)
+	{
+		this.id = id;
+	}
+	
 	Brain getBrain()
 	{
 		return brain;
 	}
-		
+	
 	void addScore(int points)
 	{
 		score += points;
@@ -227,4 +450,17 @@ public class Snake extends GameObject implements Serializable
 	{
 		return name;
 	}
+	
+	private class SegmentView extends AbstractList<Position> implements RandomAccess
+	{
+		public Position get(int index)
+		{
+			return getSegment(index);
+		}
+		
+		public int size()
+		{
+			return length;
+		}
+	}
 }
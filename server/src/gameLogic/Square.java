@@ -4,10 +4,10 @@ import java.io.Serializable;
 import java.util.*;
 
 /** 
- * Objects of this class represent a single square of the game board. Each square has a List<GameObject>
- * of all the GameObjects it contains, but it will usually only contain 0 or 1 GameObjects. The only time
- * it can contain more than one game object is when a snake collides, with either a wall or another
- * snake.
+ * Objects of this class represent a single square of the game board. A Square is a view of
+ * the board it was taken from, and answers queries directly from the board's bit planes.
+ * A square will usually contain 0 or 1 GameObjects. The only time it can contain more than
+ * one game object is when a snake collides, with either a wall or another snake.
  *
  * @author	Sixten Hilborn
  * @author	Arian Jafari
@@ -15,16 +15,13 @@ import java.util.*;
 
 public class Square implements Serializable
 {
-	private ArrayList<GameObject> objects;
+	private final Board board;
+	private final int cell;
 	
-	Square()
+	Square(Board board, int cell)
 	{
-		objects = new ArrayList<GameObject>();
-	}
-	
-	Square(Square other)
-	{
-		this.objects = new ArrayList<GameObject>(other.objects);
+		this.board = board;
+		this.cell = cell;
 	}
 	
 	/**
@@ -34,27 +31,23 @@ public class Square implements Serializable
 	 */
 	public boolean isEmpty()
 	{
-		return objects.isEmpty();
+		return !board.hasGameObject(cell);
 	}
 	
 	
 	public boolean hasObjectType(String typeName)
 	{
-		for (GameObject object : objects)
-			if (object.getType().getName().equals(typeName))
-				return true;
-		return false;
+		return board.hasObjectType(cell, typeName);
 	}
 	
 	/**
-	 * Returns whether or not this Square contains a fruit. Checks by using
-	 * hasObjectType.
+	 * Returns whether or not this Square contains a fruit.
 	 * 
 	 * @return	True if the square has a fruit, false if not.
 	 */
 	public boolean hasFruit()
 	{
-		return hasObjectType("Fruit");
+		return board.hasFruit(cell);
 	}
 	
 	/**
@@ -64,21 +57,17 @@ public class Square implements Serializable
 	 */
 	public boolean hasSnake()
 	{
-		for (GameObject object : objects)
-			if (object instanceof Snake)
-				return true;
-		return false;
+		return board.hasSnake(cell);
 	}
 	
 	/**
-	 * Returns whether or not this Square contains a wall. Checks by using
-	 * hasObjectType.
+	 * Returns whether or not this Square contains a wall.
 	 * 
 	 * @return	True if the square contains a wall, false if not.
 	 */
 	public boolean hasWall()
 	{
-		return hasObjectType("Wall");
+		return board.hasWall(cell);
 	}
 	
 	/**
@@ -88,10 +77,7 @@ public class Square implements Serializable
 	 */
 	public boolean isLethal()
 	{
-		for (GameObject object : objects)
-			if (object.getType().isLethal())
-				return true;
-		return false;
+		return board.isLethal(cell);
 	}
 	
 	/**
@@ -104,52 +90,33 @@ public class Square implements Serializable
 	 */
 	public ArrayList<Snake> getSnakes()
 	{
-		ArrayList<Snake> snakes = new ArrayList<Snake>();
-		for (GameObject object : objects)
-			if (object instanceof Snake)
-				snakes.add((Snake)object);
-		return snakes;
+		return board.getSnakes(cell);
 	}
 	
 	
 	// Remove a fruit from the square, returning its value.
 	int eatFruit()
 	{
-		for (GameObject object : objects)
-		{
-			if (object.getType().getName().equalsIgnoreCase("Fruit"))
-			{
-				int value = object.getType().getValue();
-				removeGameObject(object);
-				return value;
-			}
-		}
-		return 0;
+		return board.eatFruit(cell);
 	}
 	
 	void addGameObject(GameObject newObject)
 	{
-		objects.add(newObject);
+		board.addGameObject(newObject, cell);
 	}
 	
 	void removeGameObject(GameObject object)
 	{
-		objects.remove(object);
+		board.removeGameObject(object, cell);
 	}
 	
 	void removeFruit()
 	{
-		Iterator<GameObject> objectIterator = objects.iterator();
-		while (objectIterator.hasNext())
-		{
-			GameObject currentGameObject = objectIterator.next();
-			if (currentGameObject.getType().equals("Fruit"))
-				objects.remove(currentGameObject);
-		}
+		board.removeFruit(cell);
 	}
 	
 	void clear()
 	{
-		objects.clear();
+		board.clearSquare(cell);
 	}
 }
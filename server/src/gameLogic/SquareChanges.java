@@ -0,0 +1,75 @@
+package gameLogic;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The squares of the board that changed in the latest ticks of a session, for drawing
+ * only what changed instead of the whole board. A tick changes the old and new head and
+ * tail of every snake that moved, and the square of a new fruit; eaten fruit and dead
+ * snakes are always at a new head.
+ *
+ * Only the last HISTORY ticks are kept. Someone who has fallen further behind than that
+ * has to redraw everything.
+ *
+ * @see		Session#getSquareChanges()
+ */
+public class SquareChanges
+{
+	private static final int HISTORY = 64;
+	
+	//~ The changes of each turn, at the turn modulo HISTORY.
+	private ArrayList<List<Position>> changes = new ArrayList<List<Position>>(Collections.nCopies(HISTORY, (List<Position>)null));
+	private int turn = 0;
+	
+	/**
+	 * Records the squares changed by the ticks since the last recorded turn, up to a
+	 * given turn. A null list means they aren't known, and has the whole board drawn
+	 * again.
+	 */
+	synchronized void record(int turn, List<Position> squares)
+	{
+		//~ The turns skipped over have their changes in this turn's.
+		for (int t = Math.max(this.turn + 1, turn - HISTORY + 1); t < turn; ++t)
+			changes.set(t % HISTORY, Collections.<Position>emptyList());
+		this.turn = turn;
+		changes.set(turn % HISTORY, squares);
+	}
+	
+	/**
+	 * Gets the latest turn whose changes have been recorded. Read it before looking at
+	 * the board: the board is then at least as new as this turn.
+	 *
+	 * @return	The latest recorded turn.
+	 */
+	public synchronized int getTurn()
+	{
+		return turn;
+	}
+	
+	/**
+	 * Gets every square that changed after a given turn, up to the latest one. A square
+	 * that changed in several ticks can be in the list more than once.
+	 *
+	 * @param	since	The turn to look from.
+	 * @return	The changed squares, or null if the changes go further back than are kept.
+	 */
+	public synchronized List<Position> getChangedSince(int since)
+	{
+		if (since > turn || turn - since > HISTORY)
+			return null;
+		if (since == turn)
+			return Collections.emptyList();
+		
+		List<Position> squares = new ArrayList<Position>();
+		for (int t = since + 1; t <= turn; ++t)
+		{
+			List<Position> tick = changes.get(t % HISTORY);
+			if (tick == null)
+				return null;
+			squares.addAll(tick);
+		}
+		return squares;
+	}
+}
@@ -0,0 +1,208 @@
+package gameLogic;
+
+/**
+ * How long a snake's brain took to decide its moves, and how often it failed to. The
+ * times go in a histogram with buckets about 12% wide, so percentiles are approximate
+ * while the maximum is exact. A brain that answers after its time is up still has its
+ * time recorded, as well as counting as a timeout.
+ *
+ * Statistics of several games can be added together with {@link #add(ThinkingStatistics)}.
+ */
+public class ThinkingStatistics
+{
+	//~ Times are kept in microseconds. Below LINEAR_LIMIT every microsecond has a bucket,
+	//~ above it every power of two is split into SUB_BUCKETS buckets.
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+	private static final int BUCKETS = LINEAR_LIMIT + (64 - 4) * SUB_BUCKETS;
+	
+	private long[] counts = new long[BUCKETS];
+	private long decisions = 0;
+	private long maximum = 0;
+	private long totalTime = 0;
+	
+	private int timeouts = 0;
+	private int invalidMoves = 0;
+	private int exceptions = 0;
+	
+	synchronized void recordThinkTime(long nanoseconds)
+	{
+		long micros = Math.max(0, nanoseconds / 1000);
+		++counts[bucketOf(micros)];
+		++decisions;
+		totalTime += micros;
+		maximum = Math.max(maximum, micros);
+	}
+	
+	synchronized void recordTimeout()
+	{
+		++timeouts;
+	}
+	
+	synchronized void recordInvalidMove()
+	{
+		++invalidMoves;
+	}
+	
+	synchronized void recordException()
+	{
+		++exceptions;
+	}
+	
+	/**
+	 * Adds the statistics of another snake, or another game, to these.
+	 *
+	 * @param	other	The statistics to add.
+	 */
+	public void add(ThinkingStatistics other)
+	{
+		ThinkingStatistics copy = other.copy();
+		synchronized (this)
+		{
+			for (int i = 0; i < BUCKETS; ++i)
+				counts[i] += copy.counts[i];
+			decisions += copy.decisions;
+			totalTime += copy.totalTime;
+			maximum = Math.max(maximum, copy.maximum);
+			timeouts += copy.timeouts;
+			invalidMoves += copy.invalidMoves;
+			exceptions += copy.exceptions;
+		}
+	}
+	
+	/**
+	 * Gets the number of times the brain answered, in time or not.
+	 */
+	public synchronized long getDecisionCount()
+	{
+		return decisions;
+	}
+	
+	/**
+	 * Gets the think time that a given share of the decisions were quicker than.
+	 *
+	 * @param	percentile	The share of the decisions, from 0 to 100.
+	 * @return	The think time in microseconds, or 0 if the brain has never answered.
+	 */
+	public synchronized long getPercentile(double percentile)
+	{
+		if (percentile < 0 || percentile > 100)
+			throw new IllegalArgumentException("Percentile " + percentile + " isn't between 0 and 100");
+		if (decisions == 0)
+			return 0;
+		
+		long rank = Math.max(1, (long)Math.ceil(percentile / 100 * decisions));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; ++i)
+		{
+			seen += counts[i];
+			if (seen >= rank)
+				return Math.min(maximum, bucketEnd(i));
+		}
+		return maximum;
+	}
+	
+	/**
+	 * Gets the median think time in microseconds.
+	 */
+	public long getMedian()
+	{
+		return getPercentile(50);
+	}
+	
+	/**
+	 * Gets the 99th percentile of the think time in microseconds.
+	 */
+	public long get99thPercentile()
+	{
+		return getPercentile(99);
+	}
+	
+	/**
+	 * Gets the longest think time in microseconds.
+	 */
+	public synchronized long getMaximum()
+	{
+		return maximum;
+	}
+	
+	/**
+	 * Gets the mean think time in microseconds.
+	 */
+	public synchronized long getMean()
+	{
+		return decisions == 0 ? 0 : totalTime / decisions;
+	}
+	
+	/**
+	 * Gets the number of times the brain didn't answer before its time was up.
+	 */
+	public synchronized int getTimeouts()
+	{
+		return timeouts;
+	}
+	
+	/**
+	 * Gets the number of times the brain tried to turn back into itself.
+	 */
+	public synchronized int getInvalidMoves()
+	{
+		return invalidMoves;
+	}
+	
+	/**
+	 * Gets the number of times the brain threw an exception instead of answering.
+	 */
+	public synchronized int getExceptions()
+	{
+		return exceptions;
+	}
+	
+	public String toString()
+	{
+		ThinkingStatistics copy = copy();
+		return "p50 " + milliseconds(copy.getMedian()) + " ms, p99 " + milliseconds(copy.get99thPercentile())
+			+ " ms, max " + milliseconds(copy.getMaximum()) + " ms, " + copy.getDecisionCount() + " decisions, "
+			+ copy.getTimeouts() + " timeouts, " + copy.getInvalidMoves() + " invalid moves, "
+			+ copy.getExceptions() + " exceptions";
+	}
+	
+	private synchronized ThinkingStatistics copy()
+	{
+		ThinkingStatistics copy = new ThinkingStatistics();
+		copy.counts = counts.clone();
+		copy.decisions = decisions;
+		copy.totalTime = totalTime;
+		copy.maximum = maximum;
+		copy.timeouts = timeouts;
+		copy.invalidMoves = invalidMoves;
+		copy.exceptions = exceptions;
+		return copy;
+	}
+	
+	private static String milliseconds(long micros)
+	{
+		return String.format("%.2f", micros / 1000.0);
+	}
+	
+	private static int bucketOf(long micros)
+	{
+		if (micros < LINEAR_LIMIT)
+			return (int)micros;
+		int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		int subBucket = (int)(micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return LINEAR_LIMIT + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + subBucket;
+	}
+	
+	//~ The largest time that falls in a bucket.
+	private static long bucketEnd(int bucket)
+	{
+		if (bucket < LINEAR_LIMIT)
+			return bucket;
+		int exponent = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+		int subBucket = (bucket - LINEAR_LIMIT) % SUB_BUCKETS;
+		long start = (long)(SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+		return start + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+}
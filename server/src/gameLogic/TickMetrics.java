@@ -0,0 +1,165 @@
+package gameLogic;
+
+/**
+ * Where the time of a session's ticks goes. Each tick is split into phases, and the
+ * time spent in every phase is added up over the game, along with the longest time it
+ * took in a single tick. Only DECISIONS is spent waiting for brains; the other phases
+ * are the engine's own work.
+ *
+ * A listener can be told about every tick as it ends, and the metrics of several games
+ * can be added together with {@link #add(TickMetrics)}.
+ */
+public class TickMetrics
+{
+	/**
+	 * The parts of a tick, in the order they happen. SNAPSHOT is the copy of the board
+	 * handed to the brains, and COLLISIONS also covers spawning fruit.
+	 */
+	public enum Phase
+	{
+		GROWTH_CHECK, SNAPSHOT, DECISIONS, MOVEMENT, COLLISIONS, RECORDING;
+	}
+	
+	/**
+	 * Told about every tick of a session as it ends, on the session's thread.
+	 */
+	public interface Listener
+	{
+		/**
+		 * @param	turn	The turn the tick led to.
+		 * @param	metrics	The metrics of the session, where {@link #getLastTick(Phase)}
+		 *					holds the times of this tick.
+		 */
+		void tickFinished(int turn, TickMetrics metrics);
+	}
+	
+	private static final Phase[] PHASES = Phase.values();
+	
+	private long[] totals = new long[PHASES.length];
+	private long[] maxima = new long[PHASES.length];
+	private long[] lastTick = new long[PHASES.length];
+	private long tickCount = 0;
+	private Listener listener = null;
+	
+	public synchronized void setListener(Listener listener)
+	{
+		this.listener = listener;
+	}
+	
+	synchronized void record(Phase phase, long nanoseconds)
+	{
+		lastTick[phase.ordinal()] = nanoseconds;
+	}
+	
+	/**
+	 * Adds the phases recorded since the last tick ended to the totals.
+	 */
+	void endTick(int turn)
+	{
+		Listener currentListener;
+		synchronized (this)
+		{
+			for (int i = 0; i < PHASES.length; ++i)
+			{
+				totals[i] += lastTick[i];
+				maxima[i] = Math.max(maxima[i], lastTick[i]);
+			}
+			++tickCount;
+			currentListener = listener;
+		}
+		
+		if (currentListener != null)
+			currentListener.tickFinished(turn, this);
+		
+		synchronized (this)
+		{
+			for (int i = 0; i < PHASES.length; ++i)
+				lastTick[i] = 0;
+		}
+	}
+	
+	/**
+	 * Adds the metrics of another game to these.
+	 *
+	 * @param	other	The metrics to add.
+	 */
+	public void add(TickMetrics other)
+	{
+		long[] otherTotals, otherMaxima;
+		long otherTicks;
+		synchronized (other)
+		{
+			otherTotals = other.totals.clone();
+			otherMaxima = other.maxima.clone();
+			otherTicks = other.tickCount;
+		}
+		
+		synchronized (this)
+		{
+			for (int i = 0; i < PHASES.length; ++i)
+			{
+				totals[i] += otherTotals[i];
+				maxima[i] = Math.max(maxima[i], otherMaxima[i]);
+			}
+			tickCount += otherTicks;
+		}
+	}
+	
+	public synchronized long getTickCount()
+	{
+		return tickCount;
+	}
+	
+	/**
+	 * Gets the time spent in a phase over all ticks, in nanoseconds.
+	 */
+	public synchronized long getTotal(Phase phase)
+	{
+		return totals[phase.ordinal()];
+	}
+	
+	/**
+	 * Gets the mean time spent in a phase per tick, in nanoseconds.
+	 */
+	public synchronized long getMean(Phase phase)
+	{
+		return tickCount == 0 ? 0 : totals[phase.ordinal()] / tickCount;
+	}
+	
+	/**
+	 * Gets the longest time a phase took in a single tick, in nanoseconds.
+	 */
+	public synchronized long getMaximum(Phase phase)
+	{
+		return maxima[phase.ordinal()];
+	}
+	
+	/**
+	 * Gets the time a phase took in the tick that is ending, in nanoseconds. Only
+	 * meaningful inside {@link Listener#tickFinished(int, TickMetrics)}.
+	 */
+	public synchronized long getLastTick(Phase phase)
+	{
+		return lastTick[phase.ordinal()];
+	}
+	
+	/**
+	 * Gets the time spent in all phases but DECISIONS, in nanoseconds.
+	 */
+	public synchronized long getEngineTotal()
+	{
+		long engine = 0;
+		for (Phase phase : PHASES)
+			if (phase != Phase.DECISIONS)
+				engine += totals[phase.ordinal()];
+		return engine;
+	}
+	
+	public synchronized String toString()
+	{
+		StringBuilder builder = new StringBuilder(tickCount + " ticks");
+		for (Phase phase : PHASES)
+			builder.append(String.format(", %s %.1f us (max %.1f us)", phase.name().toLowerCase(), getMean(phase) / 1000.0, maxima[phase.ordinal()] / 1000.0));
+		return builder.toString();
+	}
+}
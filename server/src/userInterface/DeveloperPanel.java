@@ -4,9 +4,8 @@ import javax.swing.*;
 import javax.swing.event.*;
 import java.awt.event.*;
 import java.awt.Dimension;
-import java.util.List;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
 import java.awt.Insets;
 import java.awt.GridBagLayout;
 import java.awt.GridBagConstraints;
@@ -19,6 +18,7 @@ class DeveloperPanel extends JPanel
 	private SettingsWindow settingsWindow;
 	private JButton statsButton;
 	private JTextField numberOfRuns;
+	private JTextField parallelGames;
 	private JTextArea output;
 	
 	DeveloperPanel(SettingsWindow settingsWindow)
@@ -81,14 +81,39 @@ class DeveloperPanel extends JPanel
 			add(statsButton);
 		
 		constraint.fill = NONE;
-		constraint.insets = new Insets(4, 4, 4, 4);
 		constraint.gridwidth = 1;
 		constraint.gridheight = 1;
 		constraint.gridx = 0;
 		constraint.gridy = 1;
 		constraint.weightx = 0.0;
 		constraint.weighty = 0.0;
+			
+			JLabel parallelLabel = new JLabel("Games at a time:");
+			gridbag.setConstraints(parallelLabel, constraint);
+			add(parallelLabel);
 		
+		constraint.fill = HORIZONTAL;
+		constraint.gridwidth = 1;
+		constraint.gridheight = 1;
+		constraint.gridx = 1;
+		constraint.gridy = 1;
+		constraint.weightx = 1.0;
+		constraint.weighty = 0.0;
+			
+			parallelGames = new JTextField(Integer.toString(Runtime.getRuntime().availableProcessors()));
+			parallelGames.setPreferredSize(parallelGames.getPreferredSize());
+			gridbag.setConstraints(parallelGames, constraint);
+			add(parallelGames);
+		
+		constraint.fill = NONE;
+		constraint.insets = new Insets(4, 4, 4, 4);
+		constraint.gridwidth = 1;
+		constraint.gridheight = 1;
+		constraint.gridx = 0;
+		constraint.gridy = 2;
+		constraint.weightx = 0.0;
+		constraint.weighty = 0.0;
+			
 			JLabel outputLabel = new JLabel("Output:");
 			outputLabel.setHorizontalAlignment(JLabel.LEFT);
 			gridbag.setConstraints(outputLabel, constraint);
@@ -98,7 +123,7 @@ class DeveloperPanel extends JPanel
 		constraint.gridwidth = 3;
 		constraint.gridheight = 1;
 		constraint.gridx = 0;
-		constraint.gridy = 2;
+		constraint.gridy = 3;
 		constraint.weightx = 1.0;
 		constraint.weighty = 1.0;
 		
@@ -112,20 +137,38 @@ class DeveloperPanel extends JPanel
 	
 	private void println(String s)
 	{
-		output.append(s+"\n");
-		output.setCaretPosition(output.getText().length() - 1);
+		print(s+"\n");
 	}
 	
-	private void print(String s)
+	//~ Games report from several threads, so the text area is only touched from the event thread.
+	private void print(final String s)
 	{
-		output.append(s);
-		output.setCaretPosition(output.getText().length() - 1);
+		SwingUtilities.invokeLater
+		(
+			new Runnable()
+			{
+				public void run()
+				{
+					output.append(s);
+					output.setCaretPosition(output.getText().length() - 1);
+				}
+			}
+		);
 	}
 	
 	private void clear()
 	{
-		output.setText("");
-		output.setCaretPosition(0);
+		SwingUtilities.invokeLater
+		(
+			new Runnable()
+			{
+				public void run()
+				{
+					output.setText("");
+					output.setCaretPosition(0);
+				}
+			}
+		);
 	}
 	
 	private void playOverNineThousandGames()
@@ -136,95 +179,87 @@ class DeveloperPanel extends JPanel
 		statsButton.setEnabled(true);
 	}
 	
-	private class GameRunner extends Thread
+	private class GameRunner extends Thread implements GameBatch.SessionFactory, GameBatch.Listener
 	{
+		//~ The thinking statistics of every game added up by snake name.
+		private Map<String, ThinkingStatistics> thinkingStatistics = new TreeMap<String, ThinkingStatistics>();
+		
 		@Override
 		public void run()
 		{
 			try
 			{
 				clear();
-				Session session = settingsWindow.generateSession();
 				
-				HashMap<String, Results> scores = new HashMap<String, Results>();
-				int numSnakes = session.getSnakes().size();
+				final int numberOfGames = Integer.parseInt(numberOfRuns.getText());
+				final int parallelism = Integer.parseInt(parallelGames.getText());
+				println("Playing " + numberOfGames + " games, " + parallelism + " at a time");
 				
-				for(Snake s : session.getSnakes())
-				{
-					scores.put(s.getName(), new Results(numSnakes));
-				}
+				long startTime = System.nanoTime();
+				GameBatch batch = new GameBatch(this, numberOfGames, parallelism);
+				batch.setListener(this);
+				batch.run();
+				long elapsed = (System.nanoTime() - startTime) / 1000000;
 				
-				final int numberOfGames = Integer.parseInt(numberOfRuns.getText());
-				for (int currentGame = 0; currentGame < numberOfGames; ++currentGame)
+				for(Map.Entry<String, int[]> me : batch.getPlacementFrequencies().entrySet())
 				{
-					println("Starting game #" + currentGame);
-					repaint();
-					try
-					{
-						session = settingsWindow.generateSession();
-						while (!session.hasEnded())
-							session.tick();
-						
-						List<List<Snake>> result = session.getGameResult().getWinners();
-						
-						for(int i = 0; i < result.size(); ++i)
-						{
-							for(Snake s : result.get(i))
-							{
-								scores.get(s.getName()).addResult(i);
-							}
-						}
-					}
-					catch (Exception e)
+					println(me.getKey()+" (place: frequency)");
+					int[] r = me.getValue();
+					
+					for(int i = 0; i < r.length; ++i)
 					{
-						println("Error: " + e);
+						println("\t"+(i+1)+": "+r[i]+" times");
 					}
 				}
 				
-				for(Map.Entry<String, Results> me : scores.entrySet())
+				println("Thinking time");
+				synchronized (thinkingStatistics)
 				{
-					println(me.getKey()+" (place: frequency)");
-					Results r = me.getValue();
-					
-					for(int i = 0; i < numSnakes; ++i)
-					{
-						println("\t"+(i+1)+": "+r.getFreq(i)+" times");
-					}
+					for (Map.Entry<String, ThinkingStatistics> me : thinkingStatistics.entrySet())
+						println("\t" + me.getKey() + ": " + me.getValue());
 				}
 				
-				println("DONE");
+				TickMetrics tickMetrics = batch.getTickMetrics();
+				println("Tick phases (" + tickMetrics.getTickCount() + " ticks)");
+				for (TickMetrics.Phase phase : TickMetrics.Phase.values())
+					println(String.format("\t%s: mean %.1f us, max %.1f us", phase.name().toLowerCase(), tickMetrics.getMean(phase) / 1000.0, tickMetrics.getMaximum(phase) / 1000.0));
+				
+				println("DONE in " + elapsed + " ms" + (batch.getFailedGames() > 0 ? ", " + batch.getFailedGames() + " games failed" : ""));
 			}
 			catch(Exception e)
 			{
 				println("Error: " + e);
 			}
 		}
-	}
-	
-	private class Results
-	{
-		private int[] placements;
 		
-		public Results(int numSnakes)
+		//~ The settings window isn't meant to be read from several threads at once.
+		public synchronized Session createSession(int game) throws Exception
 		{
-			placements = new int[numSnakes];
-			
-			for(int i = 0; i < placements.length; ++i)
-			{
-				placements[i] = 0;
-			}
+			return settingsWindow.generateSession();
 		}
 		
-		void addResult(int i)
+		public void gameFinished(int game, Session session)
 		{
-			placements[i] += 1;
+			Map<Snake, ThinkingStatistics> gameStatistics = session.getGameResult().getThinkingStatistics();
+			synchronized (thinkingStatistics)
+			{
+				for (Map.Entry<Snake, ThinkingStatistics> me : gameStatistics.entrySet())
+				{
+					ThinkingStatistics total = thinkingStatistics.get(me.getKey().getName());
+					if (total == null)
+					{
+						total = new ThinkingStatistics();
+						thinkingStatistics.put(me.getKey().getName(), total);
+					}
+					total.add(me.getValue());
+				}
+			}
+			println("Finished game #" + game);
 		}
 		
-		int getFreq(int place)
+		public void gameFailed(int game, Exception e)
 		{
-			return placements[place];
+			println("Error in game #" + game + ": " + e);
 		}
 	}
 }
-
-
@@ -4,8 +4,12 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
-import java.util.Iterator;
-import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 import gameLogic.*;
 
 class GameBoard extends JComponent
@@ -18,9 +22,45 @@ class GameBoard extends JComponent
 	private Color wall = Color.BLACK;
 	private Color grid = Color.GRAY;
 	
+	//~ How many squares away a sprite can reach into, including the pixel it reaches
+	//~ past its grid lines when squares are very small.
+	private static final int REACH = 2;
+	
+	//~ The tiles at the current square size, made on the first paint after a resize.
+	private SpriteAtlas atlas = null;
+	private Set<Color> snakeColors = new LinkedHashSet<Color>();
+	
+	//~ The grid and the walls, which only change when the board is resized or gets new
+	//~ walls, drawn once and then copied to the screen at the start of every paint.
+	private BufferedImage backgroundLayer = null;
+	private List<Position> backgroundWalls = null;
+	
+	//~ Everything as it looked at paintedTurn. When the game tells which squares change,
+	//~ only those are drawn again, and the whole buffer is then copied to the screen.
+	private SquareChanges squareChanges;
+	private BufferedImage backBuffer = null;
+	private int paintedTurn = 0;
+	
+	//~ The squares marked while drawing only some of them, kept between paints and
+	//~ cleared again after each one.
+	private boolean[] dirty = null;
+	private boolean[] near = null;
+	
 	public GameBoard(Game game, int pixelsPerUnit)
+	{
+		this(game, null, pixelsPerUnit);
+	}
+	
+	/**
+	 * @param	game			The game to show.
+	 * @param	squareChanges	Where the game tells which squares changed, or null if it
+	 *							doesn't, in which case every paint draws everything.
+	 * @param	pixelsPerUnit	The starting size of a square.
+	 */
+	public GameBoard(Game game, SquareChanges squareChanges, int pixelsPerUnit)
 	{
 		this.game = game;
+		this.squareChanges = squareChanges;
 		this.pixelsPerXUnit = pixelsPerUnit;
 		this.pixelsPerYUnit = pixelsPerUnit;
 		this.addComponentListener(new CompLis());
@@ -28,6 +68,12 @@ class GameBoard extends JComponent
 		boardWidth  = game.getMetadata().getBoardWidth();
 		boardHeight = game.getMetadata().getBoardHeight();
 		
+		for(Snake s : game.getCurrentState().getSnakes())
+		{
+			GraphicsTile.prepareTints(s.getColor());
+			snakeColors.add(s.getColor());
+		}
+		
 		/*
 		 * The grid needs space to be in that is not inside a game square.
 		 * Hence we add 1 pixel (for the first line), plus the number of squares 
@@ -50,8 +96,253 @@ class GameBoard extends JComponent
 	{
 		super.paintComponent(g);
 		
+		//~ The turn is read before the state, so that whatever changes while the state is
+		//~ being taken is drawn again on the next paint.
+		int turn = squareChanges == null ? 0 : squareChanges.getTurn();
 		GameState gs = game.getCurrentState();
+		
+		if(atlas == null)
+			atlas = new SpriteAtlas(pixelsPerXUnit, pixelsPerYUnit, snakeColors, getGraphicsConfiguration());
+		
+		//~ Every state has its own list of walls, but they are nearly always the same walls.
+		List<Position> walls = gs.getBoard().getWallPositions();
+		if(backgroundLayer == null || (walls != backgroundWalls && !walls.equals(backgroundWalls)))
+		{
+			paintBackgroundLayer(walls);
+			backBuffer = null;
+		}
+		
+		List<Position> changed = null;
+		if(backBuffer != null && squareChanges != null)
+			changed = squareChanges.getChangedSince(paintedTurn);
+		
+		if(changed == null)
+			paintBackBuffer(gs);
+		else if(!changed.isEmpty())
+			paintSquares(gs, changed);
+		paintedTurn = turn;
+		
+		g.drawImage(backBuffer, 0, 0, null);
+	}
+	
+	private void paintBackBuffer(GameState gs)
+	{
+		if(backBuffer == null)
+			backBuffer = createLayer();
+		
+		Graphics g = backBuffer.createGraphics();
+		g.drawImage(backgroundLayer, 0, 0, null);
+		for(Sprite sprite : collectSprites(gs))
+			sprite.draw(g);
+		g.dispose();
+	}
+	
+	/**
+	 * Draws some squares of the back buffer again. A sprite reaches one pixel past the
+	 * grid lines around its square, so each square is drawn together with the pixel
+	 * around it, and with the sprites of the squares near enough to reach into that.
+	 */
+	private void paintSquares(GameState gs, List<Position> changed)
+	{
+		if(dirty == null)
+		{
+			dirty = new boolean[boardWidth*boardHeight];
+			near = new boolean[boardWidth*boardHeight];
+		}
+		
 		Board board = gs.getBoard();
+		List<Position> squares = new ArrayList<Position>();
+		List<Position> nearSquares = new ArrayList<Position>();
+		for(Position pos : changed)
+		{
+			if(dirty[pos.getY()*boardWidth + pos.getX()])
+				continue;
+			dirty[pos.getY()*boardWidth + pos.getX()] = true;
+			squares.add(pos);
+			
+			for(int x = Math.max(0, pos.getX()-REACH); x <= Math.min(boardWidth-1, pos.getX()+REACH); ++x)
+				for(int y = Math.max(0, pos.getY()-REACH); y <= Math.min(boardHeight-1, pos.getY()+REACH); ++y)
+					if(!near[y*boardWidth + x])
+					{
+						near[y*boardWidth + x] = true;
+						nearSquares.add(board.getPosition(x, y));
+					}
+		}
+		
+		List<Sprite> sprites = findSprites(gs, nearSquares, near);
+		
+		//~ Leave the arrays cleared for the next paint.
+		for(Position pos : squares)
+			dirty[pos.getY()*boardWidth + pos.getX()] = false;
+		for(Position pos : nearSquares)
+			near[pos.getY()*boardWidth + pos.getX()] = false;
+		
+		Graphics g = backBuffer.createGraphics();
+		for(Position pos : squares)
+		{
+			Graphics square = g.create();
+			square.clipRect(pos.getX()*(pixelsPerXUnit+1) - 1, pos.getY()*(pixelsPerYUnit+1) - 1, pixelsPerXUnit+4, pixelsPerYUnit+4);
+			square.drawImage(backgroundLayer, 0, 0, null);
+			for(Sprite sprite : sprites)
+			{
+				if(Math.abs(sprite.pos.getX() - pos.getX()) <= REACH && Math.abs(sprite.pos.getY() - pos.getY()) <= REACH)
+					sprite.draw(square);
+			}
+			square.dispose();
+		}
+		g.dispose();
+	}
+	
+	/**
+	 * Lists the sprites of the snakes and fruit in the order they are drawn.
+	 * 
+	 * @param	gs		The state to draw.
+	 * @return	The sprites in drawing order.
+	 */
+	private List<Sprite> collectSprites(GameState gs)
+	{
+		List<Sprite> sprites = new ArrayList<Sprite>();
+		
+		for(Snake s : gs.getSnakes())
+		{
+			int length = s.getLength();
+			for(int i = 0; i < length; ++i) 
+				sprites.add(segmentSprite(s, i, s.getSegment(i), sprites.size()));
+		}
+		
+		for(Position fruit : gs.getBoard().getFruitPositions())
+			sprites.add(new Sprite(GraphicsTile.FRUIT, null, null, fruit, sprites.size()));
+		
+		return sprites;
+	}
+	
+	/**
+	 * Lists the sprites in some squares, in the same order as collectSprites() would.
+	 * The snake in each square and which of its segments it is are looked up on the
+	 * board, so only the snakes in the squares are looked at. The heads and tails are
+	 * taken from the snakes themselves instead, since a snake's starting square is not
+	 * put on the board and stays its tail for as long as it grows.
+	 * 
+	 * @param	gs		The state to draw.
+	 * @param	squares	The squares whose sprites are wanted.
+	 * @param	marked	Which squares are in squares, by row.
+	 * @return	The sprites in drawing order.
+	 */
+	private List<Sprite> findSprites(GameState gs, List<Position> squares, boolean[] marked)
+	{
+		Board board = gs.getBoard();
+		List<Snake> snakes = new ArrayList<Snake>(gs.getSnakes());
+		List<Sprite> sprites = new ArrayList<Sprite>();
+		
+		for(int n = 0; n < snakes.size(); ++n)
+		{
+			Snake s = snakes.get(n);
+			int last = s.getLength()-1;
+			if(last < 0)
+				continue;
+			
+			if(marked[s.getSegmentY(0)*boardWidth + s.getSegmentX(0)])
+				sprites.add(segmentSprite(s, 0, s.getSegment(0), order(n, 0)));
+			if(last > 0 && marked[s.getSegmentY(last)*boardWidth + s.getSegmentX(last)])
+				sprites.add(segmentSprite(s, last, s.getSegment(last), order(n, last)));
+		}
+		
+		for(Position pos : squares)
+		{
+			int count = board.getSnakeCount(pos);
+			if(count == 1)
+			{
+				Snake s = board.getSnake(pos);
+				int i = board.getSegmentIndex(pos);
+				if(i > 0 && i < s.getLength()-1)
+					sprites.add(segmentSprite(s, i, pos, order(snakes.indexOf(s), i)));
+			}
+			else if(count > 1)
+			{
+				//~ Snakes have collided here, which is rare enough to go through them.
+				for(Snake s : new LinkedHashSet<Snake>(board.getSquare(pos).getSnakes()))
+					for(int i = 1; i < s.getLength()-1; ++i)
+						if(s.getSegmentX(i) == pos.getX() && s.getSegmentY(i) == pos.getY())
+							sprites.add(segmentSprite(s, i, pos, order(snakes.indexOf(s), i)));
+			}
+			
+			if(board.hasFruit(pos))
+				sprites.add(new Sprite(GraphicsTile.FRUIT, null, null, pos, order(snakes.size(), pos.getX()*boardHeight + pos.getY())));
+		}
+		
+		Collections.sort(sprites);
+		return sprites;
+	}
+	
+	//~ Snakes are drawn in turn from head to tail, and then the fruit by column and row.
+	private static long order(int snake, int index)
+	{
+		return (long)snake << 32 | index;
+	}
+	
+	/**
+	 * Picks the tile of one segment of a snake, from the directions of the segment and
+	 * of the one before it.
+	 */
+	private Sprite segmentSprite(Snake s, int i, Position pos, long order)
+	{
+		Direction prevDir = i > 0 ? s.getSegmentDirection(i-1) : null;
+		Direction dir = s.getSegmentDirection(i);
+		boolean hasNext = i < s.getLength()-1;
+		Direction useDir = dir;
+		
+		GraphicsTile segment;
+		
+		if(prevDir == null && !hasNext) // only element
+		{
+			segment = GraphicsTile.SNAKEMONAD;
+		}
+		else if(prevDir == null) //first element
+		{
+			segment = GraphicsTile.SNAKEHEAD;
+
+			if (s.isDead())
+				segment = GraphicsTile.SNAKEDEAD;
+		}
+		else if(!hasNext) // last element
+		{
+			segment = GraphicsTile.SNAKETAIL;
+			useDir = prevDir;
+		} 
+		else if(prevDir != dir)
+		{
+			if(prevDir.turnLeft() == dir) 
+			{
+				segment = GraphicsTile.SNAKERIGHT; // Unclear why this works, but it does
+			}
+			else
+			{
+				segment = GraphicsTile.SNAKELEFT;
+			}
+		}
+		else
+		{
+			segment = GraphicsTile.SNAKEBODY;
+		}
+		
+		return new Sprite(segment, useDir, s.getColor(), pos, order);
+	}
+	
+	private BufferedImage createLayer()
+	{
+		int width = Math.max(1, graphicsWidth), height = Math.max(1, graphicsHeight);
+		GraphicsConfiguration configuration = getGraphicsConfiguration();
+		if(configuration != null)
+			return configuration.createCompatibleImage(width, height, Transparency.OPAQUE);
+		return new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+	}
+	
+	private void paintBackgroundLayer(List<Position> walls)
+	{
+		backgroundLayer = createLayer();
+		backgroundWalls = walls;
+		
+		Graphics g = backgroundLayer.createGraphics();
 		
 		//Basic preparation.
 		g.setColor(background);
@@ -73,91 +364,45 @@ class GameBoard extends JComponent
 			lineYpos += (pixelsPerYUnit+1);
 		}
 		
-		//Image drawing.
-		Graphics2D g2d = (Graphics2D)g;
-		
-		for(Position wall : gs.getWalls())
+		for(Position wall : walls)
 		{
-			
-			GraphicsTile icon = GraphicsTile.WALL;
-			
-			g2d.drawImage(icon.getImage(), icon.getTransformation(null, wall, pixelsPerXUnit, pixelsPerYUnit), null);
+			drawTile(g, GraphicsTile.WALL, null, null, wall);
 		}
 		
-		for(Snake s : gs.getSnakes())
+		g.dispose();
+	}
+	
+	private void drawTile(Graphics g, GraphicsTile tile, Direction dir, Color color, Position pos)
+	{
+		g.drawImage(atlas.getSprite(tile, dir, color), atlas.getX(pos.getX()), atlas.getY(pos.getY()), null);
+	}
+	
+	private class Sprite implements Comparable<Sprite>
+	{
+		private final GraphicsTile tile;
+		private final Direction dir;
+		private final Color color;
+		private final Position pos;
+		private final long order;
+		
+		Sprite(GraphicsTile tile, Direction dir, Color color, Position pos, long order)
 		{
-			Direction prevDir = null;
-			for(Iterator<SnakeSegment> iter = s.getDrawData().iterator(); iter.hasNext(); ) 
-			{
-				SnakeSegment ss = iter.next();
-				Position pos = ss.getPos();
-				Direction dir = ss.getDir();
-				Direction useDir = dir;
-				
-				GraphicsTile segment;
-				
-				if(prevDir == null && !iter.hasNext()) // only element
-				{
-					segment = GraphicsTile.SNAKEMONAD;
-				}
-				else if(prevDir == null) //first element
-				{
-					segment = GraphicsTile.SNAKEHEAD;
-
-					if (s.isDead())
-						segment = GraphicsTile.SNAKEDEAD;
-				}
-				else if(!iter.hasNext()) // last element
-				{
-					segment = GraphicsTile.SNAKETAIL;
-					useDir = prevDir;
-				} 
-				else if(prevDir != dir)
-				{
-					if(prevDir.turnLeft() == dir) 
-					{
-						segment = GraphicsTile.SNAKERIGHT; // Unclear why this works, but it does
-					}
-					else
-					{
-						segment = GraphicsTile.SNAKELEFT;
-					}
-				}
-				else
-				{
-					segment = GraphicsTile.SNAKEBODY;
-				}
-				
-				AffineTransform transform = segment.getTransformation(useDir, pos, pixelsPerXUnit, pixelsPerYUnit);
-				
-				g2d.drawImage(segment.getImage(s.getColor()), transform, null);
-				
-				prevDir = dir;
-			}
+			this.tile = tile;
+			this.dir = dir;
+			this.color = color;
+			this.pos = pos;
+			this.order = order;
 		}
 		
-		
-		//BEGIN DEBUG SNAKE
-		// GraphicsTile t = GraphicsTile.SNAKEHEAD;
-		// g2d.drawImage(t.getImage(), t.getTransformation(Direction.WEST, new Position(0,0), pixelsPerXUnit, pixelsPerYUnit), null);
-		
-		// t = GraphicsTile.SNAKEBODY;
-		// g2d.drawImage(t.getImage(), t.getTransformation(Direction.NORTH, new Position(1,0), pixelsPerXUnit, pixelsPerYUnit), null);
-		// g2d.drawImage(t.getImage(), t.getTransformation(Direction.EAST, new Position(2,0), pixelsPerXUnit, pixelsPerYUnit), null);
-		// g2d.drawImage(t.getImage(), t.getTransformation(Direction.EAST, new Position(3,0), pixelsPerXUnit, pixelsPerYUnit), null);
-		
-		// t = GraphicsTile.SNAKETAIL;
-		// g2d.drawImage(t.getImage(), t.getTransformation(Direction.SOUTH, new Position(4,0), pixelsPerXUnit, pixelsPerYUnit), null);
-		//END DEBUG SNAKE
-		
-		for(Position fruit : gs.getFruits())
+		void draw(Graphics g)
 		{
-			
-			GraphicsTile icon = GraphicsTile.FRUIT;
-			
-			g2d.drawImage(icon.getImage(), icon.getTransformation(null, fruit, pixelsPerXUnit, pixelsPerYUnit), null);
+			drawTile(g, tile, dir, color, pos);
 		}
 		
+		public int compareTo(Sprite other)
+		{
+			return Long.compare(order, other.order);
+		}
 	}
 	
 	class CompLis extends ComponentAdapter
@@ -165,6 +410,8 @@ class GameBoard extends JComponent
 		@Override
 		public void componentResized(ComponentEvent ce)
 		{
+			int oldXUnit = pixelsPerXUnit, oldYUnit = pixelsPerYUnit;
+			
 			int size = Math.min(getWidth(), getHeight());
 			pixelsPerXUnit = (size-1-boardWidth)/boardWidth;
 			graphicsWidth = 1+boardWidth+boardWidth*pixelsPerXUnit;
@@ -173,6 +420,13 @@ class GameBoard extends JComponent
 			graphicsHeight = 1+boardHeight+boardHeight*pixelsPerYUnit;
 			
 			setSize(new Dimension(graphicsWidth, graphicsHeight));
+			
+			if(pixelsPerXUnit != oldXUnit || pixelsPerYUnit != oldYUnit)
+			{
+				atlas = null;
+				backgroundLayer = null;
+				backBuffer = null;
+			}
 		}
 	}
 }
@@ -7,6 +7,8 @@ import java.awt.image.BufferedImage;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import gameLogic.Direction;
 import gameLogic.Position;
 
@@ -26,6 +28,10 @@ enum GraphicsTile
 	private int imgHeight;
 	private int imgWidth;
 	
+	//~ Tinted copies of the image by snake color. Tinting redraws the image pixel by pixel,
+	//~ so it is done once per color instead of for every segment on every repaint.
+	private Map<Color, Image> tinted = new ConcurrentHashMap<Color, Image>();
+	
 	GraphicsTile(String s)
 	{
 		try
@@ -41,7 +47,28 @@ enum GraphicsTile
 		}
 	}
 	
+	/**
+	 * Tints every tile for a snake color ahead of time, so that the first repaint with
+	 * a new snake doesn't have to.
+	 */
+	static void prepareTints(Color c)
+	{
+		for (GraphicsTile tile : values())
+			tile.getImage(c);
+	}
+	
 	Image getImage(Color c)
+	{
+		Image image = tinted.get(c);
+		if (image == null)
+		{
+			image = tint(c);
+			tinted.put(c, image);
+		}
+		return image;
+	}
+	
+	private Image tint(Color c)
 	{
 		BufferedImage outImage = new BufferedImage(imgWidth, imgHeight, BufferedImage.TYPE_INT_ARGB);
 		
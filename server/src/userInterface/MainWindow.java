@@ -2,21 +2,29 @@ package userInterface;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import gameLogic.*;
 
 public class MainWindow extends JFrame
 {
-	private Session session;
+	private static final int FRAMES_PER_SECOND = 60;
+	
+	private SimulationThread simulation;
 	private GameBoard gameBoard;
 	private ScoreBoardPanel scoreBoardPanel;
 	
-	public MainWindow(Session session, int pixelsPerSquare)
+	//~ Picks up the latest snapshot of the game at display rate, whatever the game speed.
+	private Timer renderTimer;
+	private SessionSnapshot shownSnapshot = null;
+	
+	public MainWindow(SimulationThread simulation, int pixelsPerSquare)
 	{
 		super("SNAYKUU - game");
-		this.session = session;
+		this.simulation = simulation;
 		
-		gameBoard = new GameBoard(session, pixelsPerSquare);
-		scoreBoardPanel = new ScoreBoardPanel(session);
+		gameBoard = new GameBoard(simulation, simulation.getSquareChanges(), pixelsPerSquare);
+		scoreBoardPanel = new ScoreBoardPanel(simulation);
 		scoreBoardPanel.setPreferredSize(scoreBoardPanel.getPreferredSize());
 		
 		setLayout(new BorderLayout());
@@ -28,13 +36,34 @@ public class MainWindow extends JFrame
 		setDefaultCloseOperation(EXIT_ON_CLOSE);
 		setLocationRelativeTo(null);
 		setVisible(true);
+		
+		renderTimer = new Timer(1000 / FRAMES_PER_SECOND, new ActionListener()
+		{
+			public void actionPerformed(ActionEvent e)
+			{
+				update();
+			}
+		});
+		renderTimer.start();
 	}
 	
+	/**
+	 * Shows the latest snapshot of the game, if it hasn't been shown already.
+	 */
 	public void update()
 	{
-		scoreBoardPanel.updateScore(session.getGameResult());
+		SessionSnapshot snapshot = simulation.getLatestSnapshot();
+		if (snapshot == shownSnapshot)
+			return;
+		shownSnapshot = snapshot;
+		
+		scoreBoardPanel.updateScore(snapshot.getGameResult());
 		repaint();
 	}
 	
-	
+	public void dispose()
+	{
+		renderTimer.stop();
+		super.dispose();
+	}
 }
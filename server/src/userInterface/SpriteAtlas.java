@@ -0,0 +1,123 @@
+package userInterface;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import gameLogic.Direction;
+import gameLogic.Position;
+
+/**
+ * Every tile already scaled to one size of board square, and turned in every direction,
+ * so that the board can draw its tiles as plain copies instead of having each one scaled
+ * and rotated on every repaint. An atlas only fits one square size; the board makes a
+ * new one when it is resized.
+ *
+ * Each sprite is the tile drawn as it would be in the top left square, with one extra
+ * pixel on each side for the parts of a rotated tile that reach over the grid lines.
+ * Drawing it at {@link #getX(int)}, {@link #getY(int)} puts it where the tile's own
+ * transformation would have.
+ *
+ * @see		GraphicsTile
+ */
+class SpriteAtlas
+{
+	//~ Sprites for no direction go after the four directions.
+	private static final int DIRECTIONS = Direction.values().length + 1;
+	private static final Position ORIGIN = new Position(0, 0);
+	
+	private final int pixelsPerXUnit, pixelsPerYUnit;
+	private final GraphicsConfiguration configuration;
+	
+	//~ The sprites of each color by tile and direction, with null for the untinted tiles.
+	private Map<Color, Image[]> sprites = new HashMap<Color, Image[]>();
+	
+	/**
+	 * Renders the untinted tiles, and the tiles of every snake color.
+	 *
+	 * @param	pixelsPerXUnit	The width of a board square.
+	 * @param	pixelsPerYUnit	The height of a board square.
+	 * @param	colors			The colors of the snakes.
+	 * @param	configuration	The screen the sprites will be drawn on, or null if
+	 *							there is none.
+	 */
+	SpriteAtlas(int pixelsPerXUnit, int pixelsPerYUnit, Collection<Color> colors, GraphicsConfiguration configuration)
+	{
+		this.pixelsPerXUnit = pixelsPerXUnit;
+		this.pixelsPerYUnit = pixelsPerYUnit;
+		this.configuration = configuration;
+		
+		render(null);
+		for (Color color : colors)
+			render(color);
+	}
+	
+	/**
+	 * Gets a tile scaled to the square size of this atlas.
+	 *
+	 * @param	tile	The tile to get.
+	 * @param	dir		The direction the tile is facing, or null for an unturned tile.
+	 * @param	color	The color to tint the tile with, or null for the tile's own colors.
+	 * @return	The sprite, to be drawn at getX() and getY() of its square.
+	 */
+	Image getSprite(GraphicsTile tile, Direction dir, Color color)
+	{
+		Image[] colorSprites = sprites.get(color);
+		if (colorSprites == null)
+			colorSprites = render(color);
+		return colorSprites[tile.ordinal() * DIRECTIONS + (dir == null ? DIRECTIONS - 1 : dir.ordinal())];
+	}
+	
+	/**
+	 * Gets where to draw the sprite of a square in a given column.
+	 */
+	int getX(int x)
+	{
+		return x * (pixelsPerXUnit + 1) - 1;
+	}
+	
+	/**
+	 * Gets where to draw the sprite of a square in a given row.
+	 */
+	int getY(int y)
+	{
+		return y * (pixelsPerYUnit + 1) - 1;
+	}
+	
+	private Image[] render(Color color)
+	{
+		GraphicsTile[] tiles = GraphicsTile.values();
+		Image[] colorSprites = new Image[tiles.length * DIRECTIONS];
+		for (GraphicsTile tile : tiles)
+		{
+			Image source = color == null ? tile.getImage() : tile.getImage(color);
+			for (int dir = 0; dir < DIRECTIONS; ++dir)
+				colorSprites[tile.ordinal() * DIRECTIONS + dir] = render(tile, source, dir == DIRECTIONS - 1 ? null : Direction.values()[dir]);
+		}
+		sprites.put(color, colorSprites);
+		return colorSprites;
+	}
+	
+	private Image render(GraphicsTile tile, Image source, Direction dir)
+	{
+		int width = Math.max(1, pixelsPerXUnit + 3);
+		int height = Math.max(1, pixelsPerYUnit + 3);
+		BufferedImage sprite;
+		if (configuration != null)
+			sprite = configuration.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+		else
+			sprite = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		
+		Graphics2D g = sprite.createGraphics();
+		//~ Move the top left square one pixel in, to make room for the overreach.
+		g.translate(1, 1);
+		g.drawImage(source, tile.getTransformation(dir, ORIGIN, pixelsPerXUnit, pixelsPerYUnit), null);
+		g.dispose();
+		return sprite;
+	}
+}